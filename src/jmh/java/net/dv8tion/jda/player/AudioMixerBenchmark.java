@@ -0,0 +1,90 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.audio.AudioSendHandler;
+
+/**
+ * Per-frame cost of the {@link AudioMixer} for a growing number of inputs, each with its own non-unity gain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioMixerBenchmark
+{
+    @Param({ "1", "4", "16" })
+    public int inputs;
+
+    private final AudioMixer mixer = new AudioMixer();
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+        for (int i = 0; i < inputs; i++)
+        {
+            byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+            random.nextBytes(frame);
+            mixer.attach(new EndlessHandler(frame), 0.5F);
+        }
+    }
+
+    @Benchmark
+    public byte[] mix()
+    {
+        return mixer.provide20MsAudio();
+    }
+
+    private static class EndlessHandler implements AudioSendHandler
+    {
+        private final byte[] frame;
+
+        private EndlessHandler(byte[] frame)
+        {
+            this.frame = frame;
+        }
+
+        @Override
+        public boolean canProvide()
+        {
+            return true;
+        }
+
+        @Override
+        public byte[] provide20MsAudio()
+        {
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.InMemoryAudioSource;
+
+/**
+ * The operations {@link MusicPlayer} and the commands perform on the audio queue, at realistic queue sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioQueueBenchmark
+{
+    @Param({ "10", "100", "1000", "10000" })
+    public int size;
+
+    private final Random random = new Random(0);
+    private AudioQueue queue;
+    private List<AudioSource> batch;
+
+    @Setup
+    public void setup()
+    {
+        queue = new AudioQueue();
+        for (int i = 0; i < size; i++)
+            queue.add(new InMemoryAudioSource(new byte[0]));
+
+        batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            batch.add(new InMemoryAudioSource(new byte[0]));
+    }
+
+    @Benchmark
+    public AudioSource playNext()
+    {
+        AudioSource source = queue.pollFirst();
+        queue.add(source);
+        return source;
+    }
+
+    @Benchmark
+    public AudioSource playNextShuffled()
+    {
+        AudioSource source = queue.pollRandom(random);
+        queue.add(source);
+        return source;
+    }
+
+    @Benchmark
+    public void listQueue(Blackhole blackhole)
+    {
+        // ListCommand walks a snapshot of the queue.
+        for (AudioSource source : queue.snapshot())
+            blackhole.consume(source);
+    }
+
+    @Benchmark
+    public AudioSource getRandom()
+    {
+        return queue.get(random.nextInt(size));
+    }
+
+    @Benchmark
+    public AudioQueue shuffle()
+    {
+        queue.shuffle(random);
+        return queue;
+    }
+
+    @Benchmark
+    public AudioQueue move()
+    {
+        queue.move(random.nextInt(size), random.nextInt(size));
+        return queue;
+    }
+
+    @Benchmark
+    public AudioQueue addAllAndRemoveRange()
+    {
+        // A page of a playlist import, then clearing it again.
+        int index = random.nextInt(size + 1);
+        queue.addAll(index, batch);
+        queue.removeRange(index, index + batch.size());
+        return queue;
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.InMemoryAudioSource;
+
+/**
+ * One huge queue hammered from all sides at once: the audio thread taking the next track, command threads editing the
+ * queue and list commands reading it. Every source has an id, and the editors count what they insert and remove by id.
+ * At the end the queue has to hold exactly those sources, so no edit lost or duplicated one. AudioQueueTest runs the
+ * same check as a test.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioQueueStressBenchmark
+{
+    @Param({ "1000", "100000" })
+    public int size;
+
+    private AudioQueue queue;
+    private List<AudioSource> page;
+    private Map<AudioSource, Integer> ids;
+    //How often each id should be in the queue.
+    private AtomicIntegerArray expected;
+
+    @Setup
+    public void setup()
+    {
+        List<AudioSource> sources = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            sources.add(new InMemoryAudioSource(new byte[0]));
+        queue = new AudioQueue(sources);
+
+        page = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            page.add(new InMemoryAudioSource(new byte[0]));
+
+        ids = new IdentityHashMap<>();
+        for (AudioSource source : sources)
+            ids.put(source, ids.size());
+        for (AudioSource source : page)
+            ids.put(source, ids.size());
+        expected = new AtomicIntegerArray(ids.size());
+        for (int i = 0; i < size; i++)
+            expected.set(i, 1);
+    }
+
+    @TearDown
+    public void check()
+    {
+        int[] actual = new int[ids.size()];
+        for (AudioSource source : queue.snapshot())
+            actual[ids.get(source)]++;
+        for (int id = 0; id < actual.length; id++)
+        {
+            if (actual[id] != expected.get(id))
+                throw new IllegalStateException("The queue has source " + id + " " + actual[id] + " times instead of " + expected.get(id));
+        }
+        if (queue.size() != size)
+            throw new IllegalStateException("The queue has " + queue.size() + " sources instead of " + size);
+    }
+
+    @Benchmark
+    @Group("stress")
+    @GroupThreads(1)
+    public AudioSource audioThread()
+    {
+        AudioSource source = queue.pollFirst();
+        queue.add(source);
+        return source;
+    }
+
+    @Benchmark
+    @Group("stress")
+    @GroupThreads(2)
+    public AudioQueue editor()
+    {
+        // The audio thread briefly holds one source, so the editors stay within the first half of the queue.
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextBoolean())
+        {
+            queue.move(random.nextInt(size / 2), random.nextInt(size / 2));
+        }
+        else
+        {
+            // Insert and remove a page of a playlist. Another editor may have moved things in between.
+            queue.addAll(random.nextInt(size / 2), page);
+            for (AudioSource source : page)
+                expected.incrementAndGet(ids.get(source));
+            for (AudioSource source : queue.removeRange(0, page.size()))
+                expected.decrementAndGet(ids.get(source));
+        }
+        return queue;
+    }
+
+    @Benchmark
+    @Group("stress")
+    @GroupThreads(2)
+    public AudioSource reader()
+    {
+        // What ListCommand does for its first page
+        List<AudioSource> snapshot = queue.snapshot();
+        AudioSource last = null;
+        int limit = Math.min(25, snapshot.size());
+        for (AudioSource source : snapshot)
+        {
+            if (limit-- == 0)
+                break;
+            last = source;
+        }
+        return last;
+    }
+}
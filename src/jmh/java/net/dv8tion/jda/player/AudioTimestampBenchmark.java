@@ -0,0 +1,78 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.player.source.AudioStream;
+import net.dv8tion.jda.player.source.AudioTimestamp;
+
+/**
+ * Cost of turning ffmpeg's stderr progress output into an {@link AudioTimestamp}, as the streams used to do for every
+ * chunk they read, compared to deriving it from a frame count like {@link MusicPlayer#getCurrentTimestamp()} does now.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioTimestampBenchmark
+{
+    private final byte[] stderrChunk = Arrays.copyOf(
+            "size=    1234kB time=00:03:25.47 bitrate=1536.0kbits/s speed=1.01x    \r".getBytes(StandardCharsets.US_ASCII), 1024);
+    private final int chunkLength = 74;
+    private long framesProvided = 10273;
+
+    @Benchmark
+    public AudioTimestamp fromFFmpegTimestamp()
+    {
+        return AudioTimestamp.fromFFmpegTimestamp("00:03:25.47");
+    }
+
+    @Benchmark
+    public AudioTimestamp fromFrameCount()
+    {
+        return AudioTimestamp.fromMilliseconds(framesProvided * 20);
+    }
+
+    @Benchmark
+    public AudioTimestamp scrapeStderrChunk()
+    {
+        // Mirrors the former error gobbler loop in RemoteStream and LocalStream.
+        String info = new String(Arrays.copyOf(stderrChunk, chunkLength));
+        if (info.contains("time="))
+        {
+            Matcher m = AudioStream.TIME_PATTERN.matcher(info);
+            if (m.find())
+                return AudioTimestamp.fromFFmpegTimestamp(m.group());
+        }
+        return null;
+    }
+}
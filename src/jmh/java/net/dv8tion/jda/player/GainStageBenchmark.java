@@ -0,0 +1,99 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-frame cost of the {@link GainStage} compared to the float loop it replaced in {@link MusicPlayer}. Every
+ * invocation starts from the same noise frame, so the gain never scales the input down to silence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GainStageBenchmark
+{
+    private final byte[] source = new byte[MusicPlayer.FRAME_SIZE];
+    private final byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+    private final GainStage constant = new GainStage();
+    private final GainStage unity = new GainStage();
+    private final GainStage ramp = new GainStage();
+    private boolean rampUp;
+
+    @Setup
+    public void setup()
+    {
+        new Random(0).nextBytes(source);
+        constant.setVolume(0.5F);
+        constant.process(new byte[MusicPlayer.FRAME_SIZE], 0, MusicPlayer.FRAME_SIZE);
+    }
+
+    @Benchmark
+    public byte[] legacyFloatLoop()
+    {
+        System.arraycopy(source, 0, frame, 0, frame.length);
+        float volume = 0.5F;
+        for (int i = 0; i < frame.length; i+=2) {
+            short sample = (short) ((frame[i+1] & 0xff) | (frame[i] << 8));
+            sample = (short) (sample * volume);
+            frame[i+1] = (byte)(sample & 0xff);
+            frame[i] = (byte)((sample >> 8) & 0xff);
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] constantGain()
+    {
+        System.arraycopy(source, 0, frame, 0, frame.length);
+        constant.process(frame, 0, frame.length);
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] unityGain()
+    {
+        System.arraycopy(source, 0, frame, 0, frame.length);
+        unity.process(frame, 0, frame.length);
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] rampingGain()
+    {
+        // Every invocation changes the volume, so every frame is a ramp.
+        rampUp = !rampUp;
+        ramp.setVolume(rampUp ? 0.8F : 0.3F);
+        System.arraycopy(source, 0, frame, 0, frame.length);
+        ramp.process(frame, 0, frame.length);
+        return frame;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.player.source.InMemoryAudioSource;
+
+/**
+ * Cost of one {@link MusicPlayer#provide20MsAudio()} call, which JDA makes every 20ms for every playing guild.
+ * The stream is served from memory, so this is the player's own overhead.
+ * <p>
+ * The player reads on the calling thread here. With a frame buffer the benchmark would call far faster than the
+ * producer refills and mostly measure underruns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MusicPlayerBenchmark
+{
+    @Param({ "1.0", "0.5" })
+    public float volume;
+
+    private MusicPlayer player;
+
+    @Setup
+    public void setup() throws InterruptedException
+    {
+        byte[] pcm = new byte[MusicPlayer.FRAME_SIZE * 50];
+        new Random(0).nextBytes(pcm);
+
+        player = new MusicPlayer();
+        player.setBufferDepth(0);
+        player.setVolume(volume);
+        player.getAudioQueue().add(new InMemoryAudioSource(pcm));
+        player.play();
+
+        //The track is opened on the loader, until then every call would only return null.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!player.isPlaying() && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+        if (!player.isPlaying())
+            throw new IllegalStateException("The player did not start playing");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        player.stop();
+    }
+
+    @Benchmark
+    public byte[] provide20MsAudio()
+    {
+        return player.provide20MsAudio();
+    }
+}
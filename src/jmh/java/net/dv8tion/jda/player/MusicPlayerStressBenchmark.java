@@ -0,0 +1,194 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.player.source.AudioInfo;
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.AudioStream;
+import net.dv8tion.jda.player.source.AudioTimestamp;
+
+/**
+ * Command threads playing, pausing, skipping, seeking and stopping while the audio send thread reads frames, with
+ * tracks short enough that the audio thread moves on to the next one all the time as well.
+ * <p>
+ * Any exception on either side fails the run. At the end every stream that was opened must have been closed exactly
+ * once, whichever thread replaced its track or cancelled its load.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MusicPlayerStressBenchmark
+{
+    private static final int TRACK_FRAMES = 10;
+    private static final int MAX_QUEUED = 100;
+
+    @Param({ "0", "4" })
+    public int bufferDepth;
+
+    private MusicPlayer player;
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicBoolean closedTwice = new AtomicBoolean();
+
+    @Setup
+    public void setup()
+    {
+        player = new MusicPlayer();
+        player.setBufferDepth(bufferDepth);
+        player.setPreloadTime(0, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void check() throws InterruptedException
+    {
+        player.stop();
+        //Loads and seeks still running on the loader close their streams once they notice they were cancelled.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (opened.get() != closed.get() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        if (closedTwice.get())
+            throw new IllegalStateException("A stream was closed twice");
+        if (opened.get() != closed.get())
+            throw new IllegalStateException(opened.get() + " streams were opened, but " + closed.get() + " closed");
+    }
+
+    @Benchmark
+    @Group("transitions")
+    @GroupThreads(1)
+    public byte[] audioThread()
+    {
+        return player.canProvide() ? player.provide20MsAudio() : null;
+    }
+
+    @Benchmark
+    @Group("transitions")
+    @GroupThreads(3)
+    public MusicPlayer commands()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try
+        {
+            switch (random.nextInt(6))
+            {
+                case 0:
+                    if (player.getAudioQueue().size() < MAX_QUEUED)
+                        player.getAudioQueue().add(new ShortSource());
+                    player.play();
+                    break;
+                case 1:
+                    player.skipToNext();
+                    break;
+                case 2:
+                    player.pause();
+                    break;
+                case 3:
+                    player.play();
+                    break;
+                case 4:
+                    player.seek(AudioTimestamp.fromMilliseconds(random.nextInt(TRACK_FRAMES * 20)));
+                    break;
+                case 5:
+                    player.stop();
+                    break;
+            }
+        }
+        catch (IllegalStateException e)
+        {
+            //Pausing or seeking a stopped player, or playing with an empty queue
+        }
+        return player;
+    }
+
+    private class ShortSource implements AudioSource
+    {
+        @Override
+        public String getSource()
+        {
+            return "short";
+        }
+
+        @Override
+        public AudioInfo getInfo()
+        {
+            return new AudioInfo();
+        }
+
+        @Override
+        public AudioStream asStream()
+        {
+            return asStream(null);
+        }
+
+        @Override
+        public AudioStream asStream(AudioTimestamp start)
+        {
+            int offset = start != null ? (int) Math.min(start.getTotalMilliseconds() / 20, TRACK_FRAMES) : 0;
+            byte[] pcm = new byte[(TRACK_FRAMES - offset) * MusicPlayer.FRAME_SIZE];
+            opened.incrementAndGet();
+            return new AudioStream()
+            {
+                private final AtomicBoolean isClosed = new AtomicBoolean();
+
+                {
+                    this.in = new ByteArrayInputStream(pcm);
+                }
+
+                @Override
+                public void close() throws IOException
+                {
+                    if (isClosed.getAndSet(true))
+                        closedTwice.set(true);
+                    else
+                        closed.incrementAndGet();
+                    super.close();
+                }
+            };
+        }
+
+        @Override
+        public File asFile(String path, boolean deleteOnExists)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
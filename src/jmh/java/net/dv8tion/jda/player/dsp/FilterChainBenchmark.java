@@ -0,0 +1,94 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Per-frame cost of a {@link FilterChain}: a 10-band {@link Equalizer} with every band active, the same followed by a
+ * {@link BassBoost} and a {@link Limiter}, and an empty chain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterChainBenchmark
+{
+    private final byte[] source = new byte[MusicPlayer.FRAME_SIZE];
+    private final byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+    private final FilterChain empty = new FilterChain();
+    private final FilterChain equalizer = new FilterChain();
+    private final FilterChain full = new FilterChain();
+
+    @Setup
+    public void setup()
+    {
+        new Random(0).nextBytes(source);
+
+        equalizer.add(createEqualizer());
+        full.add(createEqualizer());
+        full.add(new BassBoost(6));
+        full.add(new Limiter());
+    }
+
+    private static Equalizer createEqualizer()
+    {
+        Equalizer eq = new Equalizer();
+        for (int band = 0; band < eq.getBandCount(); band++)
+            eq.setGain(band, band % 2 == 0 ? 3 : -3);
+        return eq;
+    }
+
+    @Benchmark
+    public byte[] emptyChain()
+    {
+        System.arraycopy(source, 0, frame, 0, frame.length);
+        empty.process(frame, 0, frame.length);
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] equalizer10Band()
+    {
+        System.arraycopy(source, 0, frame, 0, frame.length);
+        equalizer.process(frame, 0, frame.length);
+        return frame;
+    }
+
+    @Benchmark
+    public byte[] equalizerBassBoostLimiter()
+    {
+        System.arraycopy(source, 0, frame, 0, frame.length);
+        full.process(frame, 0, frame.length);
+        return frame;
+    }
+}
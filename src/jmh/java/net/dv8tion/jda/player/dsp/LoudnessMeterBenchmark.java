@@ -0,0 +1,94 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Per-frame cost of loudness normalization, which runs on every player: measuring a frame with the
+ * {@link LoudnessMeter}, measuring and applying the gain with the {@link LoudnessNormalizer}, and reading the
+ * integrated loudness of a long measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoudnessMeterBenchmark
+{
+    private final byte[] source = new byte[MusicPlayer.FRAME_SIZE];
+    private final byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+    private final LoudnessMeter meter = new LoudnessMeter();
+    private final LoudnessMeter measured = new LoudnessMeter();
+    private final LoudnessNormalizer normalizer = new LoudnessNormalizer();
+
+    @Setup
+    public void setup()
+    {
+        new Random(0).nextBytes(source);
+
+        //An hour of audio at varying levels, so the histogram has many bins filled.
+        Random random = new Random(1);
+        for (int i = 0; i < 180000; i++)
+        {
+            int shift = i / 500 % 8;
+            for (int s = 0; s < frame.length; s += 2)
+            {
+                short sample = (short) ((short) random.nextInt() >> shift);
+                frame[s] = (byte) (sample >> 8);
+                frame[s + 1] = (byte) sample;
+            }
+            measured.add(frame, 0, frame.length);
+        }
+        normalizer.reset(Double.NaN);
+    }
+
+    @Benchmark
+    public LoudnessMeter meter()
+    {
+        meter.add(source, 0, source.length);
+        return meter;
+    }
+
+    @Benchmark
+    public byte[] normalizer()
+    {
+        System.arraycopy(source, 0, frame, 0, frame.length);
+        normalizer.process(frame, 0, frame.length);
+        return frame;
+    }
+
+    @Benchmark
+    public double integratedLoudness()
+    {
+        return measured.getIntegratedLoudness();
+    }
+}
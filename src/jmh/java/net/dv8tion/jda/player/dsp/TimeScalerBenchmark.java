@@ -0,0 +1,86 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Per-frame cost of the {@link TimeScaler}, including the input frames it draws, for a tempo change, a rate change
+ * and nightcore (both). The switching case changes the speed on every frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeScalerBenchmark
+{
+    @Param({ "tempo", "rate", "nightcore", "switching" })
+    public String mode;
+
+    private final TimeScaler scaler = new TimeScaler();
+    private final byte[] input = new byte[MusicPlayer.FRAME_SIZE];
+    private final byte[] output = new byte[MusicPlayer.FRAME_SIZE];
+    private boolean faster;
+
+    @Setup
+    public void setup()
+    {
+        new Random(0).nextBytes(input);
+        switch (mode)
+        {
+            case "tempo":
+                scaler.setTempo(1.25);
+                break;
+            case "rate":
+                scaler.setRate(1.25);
+                break;
+            case "nightcore":
+                scaler.setTempo(1.1);
+                scaler.setRate(1.2);
+                break;
+        }
+    }
+
+    @Benchmark
+    public byte[] frame()
+    {
+        if (mode.equals("switching"))
+        {
+            faster = !faster;
+            scaler.setTempo(faster ? 1.5 : 0.75);
+        }
+        while (!scaler.pull(output))
+            scaler.push(input, 0, input.length);
+        return output;
+    }
+}
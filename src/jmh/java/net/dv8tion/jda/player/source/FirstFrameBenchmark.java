@@ -0,0 +1,95 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Time from opening a track to holding its first frame, for decoded PCM from the {@link PcmCache} versus a
+ * {@link LocalStream}. The ffmpeg of the latter is replaced by a stand-in that outputs PCM right away, so this is a
+ * lower bound of what starting the process costs. Needs a POSIX shell.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FirstFrameBenchmark
+{
+    private static final int TRACK_BYTES = 30 * 1000 * PcmSource.BYTES_PER_MILLISECOND;     //A 30 second clip
+
+    private static final List<String> FFMPEG = Arrays.asList("sh", "-c", "exec head -c " + TRACK_BYTES + " /dev/zero");
+
+    private final byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+    private File pcm;
+    private PcmSource pcmSource;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+    {
+        pcm = File.createTempFile("jda-player-", ".pcm");
+        try (RandomAccessFile file = new RandomAccessFile(pcm, "rw"))
+        {
+            file.setLength(TRACK_BYTES);
+        }
+        pcmSource = new PcmSource(pcm);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        pcm.delete();
+    }
+
+    @Benchmark
+    public int pcmSource() throws IOException
+    {
+        AudioStream stream = pcmSource.asStream();
+        int amountRead = stream.readFrame(frame, Long.MAX_VALUE);
+        stream.close();
+        return amountRead;
+    }
+
+    @Benchmark
+    public int localStream() throws IOException
+    {
+        AudioStream stream = new LocalStream(FFMPEG);
+        int amountRead = stream.readFrame(frame, Long.MAX_VALUE);
+        stream.close();
+        return amountRead;
+    }
+}
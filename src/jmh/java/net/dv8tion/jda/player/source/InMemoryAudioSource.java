@@ -0,0 +1,52 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.File;
+
+public class InMemoryAudioSource implements AudioSource
+{
+    private final byte[] pcm;
+
+    public InMemoryAudioSource(byte[] pcm)
+    {
+        this.pcm = pcm;
+    }
+
+    @Override
+    public String getSource()
+    {
+        return "memory";
+    }
+
+    @Override
+    public AudioInfo getInfo()
+    {
+        return new AudioInfo();
+    }
+
+    @Override
+    public AudioStream asStream()
+    {
+        return new InMemoryAudioStream(pcm);
+    }
+
+    @Override
+    public File asFile(String path, boolean deleteOnExists)
+    {
+        throw new UnsupportedOperationException();
+    }
+}
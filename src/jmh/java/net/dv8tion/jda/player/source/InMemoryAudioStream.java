@@ -0,0 +1,55 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.InputStream;
+
+/**
+ * Serves a fixed block of PCM over and over again, so benchmarks measure the player and not ffmpeg.
+ */
+public class InMemoryAudioStream extends AudioStream
+{
+    public InMemoryAudioStream(final byte[] pcm)
+    {
+        this.in = new InputStream()
+        {
+            private int position = 0;
+
+            @Override
+            public int read()
+            {
+                int value = pcm[position] & 0xff;
+                position = (position + 1) % pcm.length;
+                return value;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len)
+            {
+                int amount = Math.min(len, pcm.length - position);
+                System.arraycopy(pcm, position, b, off, amount);
+                position = (position + amount) % pcm.length;
+                return amount;
+            }
+
+            @Override
+            public int available()
+            {
+                return pcm.length - position;
+            }
+        };
+    }
+}
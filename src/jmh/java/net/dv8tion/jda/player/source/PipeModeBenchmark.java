@@ -0,0 +1,100 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Compares copying youtube-dl's output into ffmpeg through the JVM with connecting both processes directly.
+ * <p>
+ * Each operation streams one minute worth of source media (about 1.2MB, bestaudio at 160kbit/s) through stand-ins for
+ * youtube-dl and ffmpeg, so only the piping differs. Besides the time per stream-minute, the JVM's own CPU time per
+ * stream-minute is printed at the end of each trial. Needs a POSIX shell.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipeModeBenchmark
+{
+    private static final int BYTES_PER_MINUTE = 160 * 1000 / 8 * 60;
+
+    //Both stand-ins use the standard streams when given "-", like youtube-dl and ffmpeg are configured to.
+    private static final List<String> YTDL = Arrays.asList("sh", "-c",
+            "[ \"$2\" = - ] && exec head -c " + BYTES_PER_MINUTE + " /dev/zero; exec head -c " + BYTES_PER_MINUTE + " /dev/zero > \"$2\"",
+            "sh", "-o", "-");
+    private static final List<String> FFMPEG = Arrays.asList("sh", "-c",
+            "[ \"$2\" = - ] && exec cat; exec cat \"$2\"",
+            "sh", "-i", "-");
+
+    @Param({ "false", "true" })
+    public boolean directPipe;
+
+    private final byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+    private com.sun.management.OperatingSystemMXBean os;
+    private long cpuStart;
+    private long operations;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        os = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        cpuStart = os.getProcessCpuTime();
+        operations = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void report()
+    {
+        long cpu = os.getProcessCpuTime() - cpuStart;
+        System.out.printf("%nJVM CPU per stream-minute (directPipe=%s): %.3f ms%n", directPipe, cpu / 1e6 / operations);
+    }
+
+    @Benchmark
+    public long streamOneMinute() throws IOException
+    {
+        RemoteStream stream = new RemoteStream(YTDL, FFMPEG, directPipe);
+        long total = 0;
+        int amountRead;
+        while ((amountRead = stream.read(frame, 0, frame.length)) > -1)
+            total += amountRead;
+        stream.close();
+        operations++;
+        return total;
+    }
+}
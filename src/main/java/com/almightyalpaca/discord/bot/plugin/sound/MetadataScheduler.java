@@ -0,0 +1,181 @@
+package com.almightyalpaca.discord.bot.plugin.sound;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.ToIntFunction;
+
+import net.dv8tion.jda.player.JDAPlayerConfig;
+import net.dv8tion.jda.player.source.AudioSource;
+
+/**
+ * Resolves the infos of queued sources for all guilds on a fixed amount of threads, however many guilds are queueing
+ * at once.
+ * <p>
+ * The scheduler also hands out one extraction permit per thread. Once they are set as the
+ * {@link JDAPlayerConfig#setEXTRACTION_PERMITS(Semaphore) extraction permits}, every youtube-dl extraction takes one,
+ * whether it was started by this scheduler, by the players loading and caching tracks, or by a fallback to a process
+ * of its own. So there are never more extractions running than there are threads.
+ * <p>
+ * Every owner, usually a {@link SoundPlayer}, has its own queue and the owners take turns, so one long playlist cannot
+ * hold up the other guilds. Within an owner the source with the lowest priority, its position in the queue, goes first.
+ */
+public class MetadataScheduler {
+
+	private static class Task {
+
+		private final AudioSource	source;
+		private final long			sequence;
+		private int					priority;
+
+		private Task(final AudioSource source, final int priority, final long sequence) {
+			this.source = source;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+	}
+
+	private static final Comparator<Task> ORDER = Comparator.<Task> comparingInt(t -> t.priority).thenComparingLong(t -> t.sequence);
+
+	// Guarded by this
+	private final Map<Object, PriorityQueue<Task>>	queues		= new IdentityHashMap<>();
+	private final Deque<Object>						turns		= new ArrayDeque<>();
+	private long									sequence	= 0;
+	private boolean									shutdown	= false;
+
+	private final List<Thread>						threads;
+	private final Semaphore							permits;
+
+	/**
+	 * @param threads
+	 *            The most infos resolved at once.
+	 */
+	public MetadataScheduler(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The scheduler needs at least one thread!");
+		}
+		this.permits = new Semaphore(threads, true);
+		this.threads = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			final Thread thread = new Thread(this::run, "AudioInfo-Thread-" + i);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			thread.setDaemon(true);
+			thread.start();
+			this.threads.add(thread);
+		}
+	}
+
+	/**
+	 * Drops all queued sources of the owner. Infos that are being resolved already are not interrupted.
+	 */
+	public synchronized void cancel(final Object owner) {
+		if (this.queues.remove(owner) != null) {
+			this.turns.remove(owner);
+		}
+	}
+
+	/**
+	 * @return the permits that bound the extractions of all threads, see {@link JDAPlayerConfig#setEXTRACTION_PERMITS(Semaphore)}.
+	 */
+	public Semaphore getPermits() {
+		return this.permits;
+	}
+
+	public synchronized int getQueued() {
+		int queued = 0;
+		for (final PriorityQueue<Task> queue : this.queues.values()) {
+			queued += queue.size();
+		}
+		return queued;
+	}
+
+	public synchronized int getQueued(final Object owner) {
+		final PriorityQueue<Task> queue = this.queues.get(owner);
+		return queue == null ? 0 : queue.size();
+	}
+
+	/**
+	 * Updates the priorities of the owner's queued sources, e.g. after its queue was reordered.
+	 */
+	public synchronized void reprioritize(final Object owner, final ToIntFunction<AudioSource> priority) {
+		final PriorityQueue<Task> queue = this.queues.get(owner);
+		if (queue == null) {
+			return;
+		}
+		final List<Task> tasks = new ArrayList<>(queue);
+		queue.clear();
+		for (final Task task : tasks) {
+			task.priority = priority.applyAsInt(task.source);
+			queue.add(task);
+		}
+	}
+
+	/**
+	 * Queues the source to have its info resolved.
+	 *
+	 * @param priority
+	 *            Lower goes first among the owner's sources.
+	 */
+	public synchronized void schedule(final Object owner, final AudioSource source, final int priority) {
+		if (this.shutdown) {
+			throw new IllegalStateException("The scheduler was shut down!");
+		}
+		PriorityQueue<Task> queue = this.queues.get(owner);
+		if (queue == null) {
+			queue = new PriorityQueue<>(MetadataScheduler.ORDER);
+			this.queues.put(owner, queue);
+			this.turns.addLast(owner);
+		}
+		queue.add(new Task(source, priority, this.sequence++));
+		this.notify();
+	}
+
+	/**
+	 * Drops everything queued and stops the threads once their current info is resolved.
+	 */
+	public synchronized void shutdown() {
+		this.shutdown = true;
+		this.queues.clear();
+		this.turns.clear();
+		this.notifyAll();
+	}
+
+	private synchronized Task next() throws InterruptedException {
+		while (this.turns.isEmpty()) {
+			if (this.shutdown) {
+				return null;
+			}
+			this.wait();
+		}
+		final Object owner = this.turns.pollFirst();
+		final PriorityQueue<Task> queue = this.queues.get(owner);
+		final Task task = queue.poll();
+		if (queue.isEmpty()) {
+			this.queues.remove(owner);
+		} else {
+			this.turns.addLast(owner);
+		}
+		return task;
+	}
+
+	private void run() {
+		try {
+			Task task;
+			while ((task = this.next()) != null) {
+				try {
+					task.source.getInfo();
+				} catch (final Exception e) {
+					e.printStackTrace();
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
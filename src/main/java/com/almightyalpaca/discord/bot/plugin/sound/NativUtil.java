@@ -21,6 +21,31 @@ public class NativUtil {
 		return NativUtil.downloader.ffmpegBinary();
 	}
 
+	public static String getExtractorWorkerFile() {
+		final File worker = new File(NativUtil.folder, "jda_player_worker.py");
+
+		// Always replaced, so it matches the protocol of this version
+		try {
+			worker.getParentFile().mkdirs();
+			IOUtils.copy(NativUtil.class.getResourceAsStream("/jda_player_worker.py"), new FileOutputStream(worker));
+		} catch (IOException | SecurityException | IllegalArgumentException e) {
+			e.printStackTrace();
+		}
+		return worker.getAbsolutePath();
+	}
+
+	public static File getInfoCacheFolder() {
+		return new File(NativUtil.folder, "info");
+	}
+
+	public static File getPcmCacheFolder() {
+		return new File(NativUtil.folder, "pcm");
+	}
+
+	public static File getTrackCacheFolder() {
+		return new File(NativUtil.folder, "tracks");
+	}
+
 	public static String getYoutubeDLFile() {
 
 		final File youtubedl = new File(NativUtil.folder, "youtube-dl.py");
@@ -0,0 +1,130 @@
+package com.almightyalpaca.discord.bot.plugin.sound;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.mashape.unirest.http.Unirest;
+import com.mashape.unirest.http.exceptions.UnirestException;
+
+/**
+ * Imports YouTube playlists page by page through the YouTube Data API. The first item starts playback right away, the
+ * remaining ones are appended in order while the next pages load in the background.
+ */
+public class PlaylistImporter {
+
+	public static final String	DEFAULT_API_URL	= "https://www.googleapis.com/youtube/v3";
+	private static final int	PAGE_SIZE		= 50;	// The most the API allows
+
+	public class Import {
+
+		private final SoundPlayer	player;
+		private final String		playlistId;
+		private volatile boolean	cancelled	= false;
+		private volatile int		imported	= 0;
+		private volatile Future<?>	future;
+
+		private Import(final SoundPlayer player, final String playlistId) {
+			this.player = player;
+			this.playlistId = playlistId;
+		}
+
+		/**
+		 * Stops importing. Items that were imported already stay in the queue.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+			this.future.cancel(true);
+		}
+
+		public int getImported() {
+			return this.imported;
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		public boolean isDone() {
+			return this.future.isDone();
+		}
+
+		private void run() {
+			String pageToken = null;
+			try {
+				do {
+					final JSONObject page = PlaylistImporter.this.fetchPage(this.playlistId, pageToken);
+					final JSONArray items = page.optJSONArray("items");
+					if (items != null) {
+						for (int i = 0; i < items.length() && !this.isCancelled(); i++) {
+							final String videoId = items.getJSONObject(i).getJSONObject("snippet").getJSONObject("resourceId").optString("videoId", null);
+							if (videoId == null) {
+								continue; // Not a video
+							}
+							this.player.add(new URL("https://www.youtube.com/watch?v=" + videoId));
+							if (this.imported++ == 0) {
+								this.player.play();
+							}
+						}
+					}
+					pageToken = page.optString("nextPageToken", null);
+				} while (pageToken != null && !this.isCancelled());
+			} catch (UnirestException | MalformedURLException | JSONException e) {
+				if (!this.isCancelled()) {
+					e.printStackTrace();
+				}
+			} catch (final RuntimeException e) {
+				// E.g. the player failing to start. Nobody reads the future, so it has to be reported here.
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private final ExecutorService	executor	= Executors.newCachedThreadPool(r -> {
+		final Thread thread = new Thread(r, "Playlist-Import-Thread");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String			apiUrl;
+	private final String			key;
+
+	/**
+	 * @param apiUrl
+	 *            The base URL of the YouTube Data API, see {@link #DEFAULT_API_URL}.
+	 */
+	public PlaylistImporter(final String apiUrl, final String key) {
+		this.apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+		this.key = key;
+	}
+
+	/**
+	 * Starts appending the playlist to the player's queue in the background.
+	 */
+	public Import start(final SoundPlayer player, final String playlistId) {
+		final Import playlistImport = new Import(player, playlistId);
+		playlistImport.future = this.executor.submit(playlistImport::run);
+		return playlistImport;
+	}
+
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+	private JSONObject fetchPage(final String playlistId, final String pageToken) throws UnirestException {
+		return Unirest.get(this.apiUrl + "/playlistItems")
+			.queryString("part", "snippet")
+			.queryString("fields", "nextPageToken,items/snippet/resourceId/videoId")
+			.queryString("maxResults", PlaylistImporter.PAGE_SIZE)
+			.queryString("playlistId", playlistId)
+			.queryString("pageToken", pageToken == null ? "" : pageToken)
+			.queryString("key", this.key)
+			.asJson().getBody().getObject();
+	}
+}
@@ -1,14 +1,9 @@
 package com.almightyalpaca.discord.bot.plugin.sound;
 
 import java.net.URL;
-import java.util.Collections;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-
-import com.google.common.util.concurrent.MoreExecutors;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
 
 import net.dv8tion.jda.player.MusicPlayer;
 import net.dv8tion.jda.player.source.AudioSource;
@@ -16,32 +11,61 @@ import net.dv8tion.jda.player.source.RemoteSource;
 
 public class SoundPlayer extends MusicPlayer {
 
-	private final ExecutorService executor = new ThreadPoolExecutor(0, 5, 1L, TimeUnit.MINUTES, new LinkedBlockingQueue<Runnable>(), (ThreadFactory) r -> {
-		final Thread thread = new Thread(r, "AudioInfo-Thread");
-		thread.setPriority(Thread.MIN_PRIORITY);
-		thread.setDaemon(true);
-		return thread;
-	});
+	private final MetadataScheduler	scheduler;
+	private PlaylistImporter.Import	playlistImport;
+	// The metadata priority of the next source, which goes behind all queued ones
+	private int						position	= 0;
 
-	public SoundPlayer() {
+	public SoundPlayer(final MetadataScheduler scheduler) {
 		super();
+		this.scheduler = scheduler;
 	}
 
-	public void add(final AudioSource source) {
+	public synchronized void add(final AudioSource source) {
 		this.audioQueue.add(source);
-		this.executor.submit(() -> source.getInfo());
+		this.scheduler.schedule(this, source, this.position++);
 	}
 
 	public void add(final URL url) {
 		this.add(new RemoteSource(url.toString()));
 	}
 
-	public void shuffle() {
-		Collections.shuffle(this.audioQueue);
+	/**
+	 * Stops importing the playlist that is being imported, if any.
+	 *
+	 * @return true if an import was cancelled
+	 */
+	public synchronized boolean cancelImport() {
+		if (this.playlistImport == null || this.playlistImport.isDone()) {
+			return false;
+		}
+		this.playlistImport.cancel();
+		this.playlistImport = null;
+		return true;
+	}
+
+	/**
+	 * Appends the playlist to the queue in the background, cancelling the previous import.
+	 */
+	public synchronized void importPlaylist(final PlaylistImporter importer, final String playlistId) {
+		this.cancelImport();
+		this.playlistImport = importer.start(this, playlistId);
+	}
+
+	public synchronized void shuffle() {
+		this.audioQueue.shuffle(new Random());
+
+		final Map<AudioSource, Integer> positions = new IdentityHashMap<>();
+		for (final AudioSource source : this.audioQueue.snapshot()) {
+			positions.putIfAbsent(source, positions.size());
+		}
+		this.scheduler.reprioritize(this, source -> positions.getOrDefault(source, Integer.MAX_VALUE));
+		this.position = positions.size();
 	}
 
 	public void shutdown() {
-		MoreExecutors.shutdownAndAwaitTermination(this.executor, 10, TimeUnit.SECONDS);
+		this.cancelImport();
+		this.scheduler.cancel(this);
 		this.stop();
 	}
 }
@@ -1,14 +1,14 @@
 package com.almightyalpaca.discord.bot.plugin.sound;
 
 import java.io.File;
-import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import com.almightyalpaca.discord.bot.system.command.Command;
 import com.almightyalpaca.discord.bot.system.command.CommandHandler;
 import com.almightyalpaca.discord.bot.system.config.Config;
@@ -21,8 +21,6 @@ import com.almightyalpaca.discord.bot.system.plugins.Plugin;
 import com.almightyalpaca.discord.bot.system.plugins.PluginInfo;
 import com.almightyalpaca.discord.bot.system.util.MathUtil;
 import com.almightyalpaca.discord.bot.system.util.StringUtils;
-import com.mashape.unirest.http.Unirest;
-import com.mashape.unirest.http.exceptions.UnirestException;
 
 import net.dv8tion.jda.MessageBuilder;
 import net.dv8tion.jda.MessageBuilder.Formatting;
@@ -33,8 +31,13 @@ import net.dv8tion.jda.entities.impl.JDAImpl;
 import net.dv8tion.jda.managers.AudioManager;
 import net.dv8tion.jda.player.JDAPlayerConfig;
 import net.dv8tion.jda.player.source.AudioInfo;
+import net.dv8tion.jda.player.source.AudioInfoBatcher;
+import net.dv8tion.jda.player.source.AudioInfoCache;
 import net.dv8tion.jda.player.source.AudioSource;
 import net.dv8tion.jda.player.source.AudioTimestamp;
+import net.dv8tion.jda.player.source.ExtractorPool;
+import net.dv8tion.jda.player.source.PcmCache;
+import net.dv8tion.jda.player.source.TrackCache;
 
 public class SoundPlugin extends Plugin {
 
@@ -84,6 +87,20 @@ public class SoundPlugin extends Plugin {
 		}
 	}
 
+	public class CancelCommand extends Command {
+
+		public CancelCommand() {
+			super("cancel", "Stop importing a playlist", "");
+		}
+
+		@CommandHandler(dm = false, guild = true, async = true)
+		public void onCommand(final CommandEvent event) {
+			if (SoundPlugin.this.checkAccess(event)) {
+				SoundPlugin.this.getPlayer(event).cancelImport();
+			}
+		}
+	}
+
 	public class ListCommand extends Command {
 
 		public ListCommand() {
@@ -104,14 +121,16 @@ public class SoundPlugin extends Plugin {
 			builder.appendString("Playing:  ", Formatting.BOLD).appendString(info.getTitle()).newLine();
 			builder.appendString("Time:	 ", Formatting.BOLD).appendString(info.getDuration().getTimestamp()).newLine();
 
-			limit = Math.min(limit, SoundPlugin.this.getPlayer(event).getAudioQueue().size());
+			final List<AudioSource> queue = SoundPlugin.this.getPlayer(event).getAudioQueue().snapshot();
+			limit = Math.min(limit, queue.size());
 			final String digits = String.valueOf(String.valueOf(limit).length()); // Get the lenth of limit
 
 			builder.newLine();
 			builder.appendString("Queue:", Formatting.BOLD).newLine();
 
+			final Iterator<AudioSource> iterator = queue.iterator();
 			for (int i = 0; i < limit; i++) {
-				final AudioSource source = SoundPlugin.this.getPlayer(event).getAudioQueue().get(i);
+				final AudioSource source = iterator.next();
 				builder.appendString("[" + String.format("%0" + digits + "d", i + 1) + "] ", Formatting.BOLD).appendString(source.getInfo().getTitle()).newLine();
 			}
 			event.sendMessage(builder);
@@ -150,21 +169,8 @@ public class SoundPlugin extends Plugin {
 			if (SoundPlugin.this.checkAccess(event)) {
 				if (list.equalsIgnoreCase("list")) {
 					final String listId = SoundPlugin.this.getPlaylistId(url.toString());
-					if (list != null) {
-						try {
-							final JSONObject response = Unirest
-								.get("https://www.googleapis.com/youtube/v3/playlistItems?part=snippet&maxResults=50&playlistId=" + listId + "&key=" + SoundPlugin.this.googleConfig.getString("key"))
-								.asJson().getBody().getObject();
-							for (int i = 0; i < response.getJSONArray("items").length(); i++) {
-								final JSONObject item = response.getJSONArray("items").optJSONObject(i);
-								final JSONObject snippet = item.getJSONObject("snippet");
-								final JSONObject resourceId = snippet.getJSONObject("resourceId");
-								SoundPlugin.this.getPlayer(event).add(new URL("https://www.youtube.com/watch?v=" + resourceId.getString("videoId")));
-							}
-							SoundPlugin.this.getPlayer(event).play();
-						} catch (WrongTypeException | KeyNotFoundException | UnirestException | MalformedURLException | JSONException e) {
-							e.printStackTrace();
-						}
+					if (listId != null) {
+						SoundPlugin.this.getPlayer(event).importPlaylist(SoundPlugin.this.playlistImporter, listId);
 					}
 				} else {
 					this.onCommand(event);
@@ -251,6 +257,30 @@ public class SoundPlugin extends Plugin {
 		}
 	}
 
+	public class SeekCommand extends Command {
+
+		public SeekCommand() {
+			super("seek", "Jump to a position in the current song", "[[hh:]mm:]ss");
+		}
+
+		@CommandHandler(dm = false, guild = true, async = true)
+		public void onCommand(final CommandEvent event, final String position) {
+			if (SoundPlugin.this.checkAccess(event)) {
+				try {
+					SoundPlugin.this.getPlayer(event).seek(AudioTimestamp.fromString(position)).whenComplete((v, e) -> {
+						if (e != null && !(e instanceof CancellationException)) {
+							e.printStackTrace();
+						}
+					});
+				} catch (final NumberFormatException e) {
+					event.sendMessage(new MessageBuilder().appendString(e.getMessage()));
+				} catch (final IllegalStateException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
 	public class SkipCommand extends Command {
 
 		public SkipCommand() {
@@ -313,7 +343,21 @@ public class SoundPlugin extends Plugin {
 
 	private static final PluginInfo INFO = new PluginInfo("com.almightyalpaca.discord.bot.plugin.sound", "1.0.0", "Almighty Alpaca", "Sound Plugin", "Music Bot and Soundboard");
 
-	private Config googleConfig;
+	private static final long		TRACK_CACHE_SIZE	= 2L * 1024 * 1024 * 1024;	// 2 GiB
+	private static final long		PCM_CACHE_SIZE		= 1L * 1024 * 1024 * 1024;	// 1 GiB
+	private static final int		PCM_PROMOTE_AFTER	= 3;						// plays
+	private static final long		INFO_CACHE_TTL		= TimeUnit.DAYS.toMillis(1);
+	private static final int		INFO_CACHE_MEMORY	= 1000;						// infos
+	private static final int		INFO_BATCH_SIZE		= 25;						// URLs
+	private static final long		INFO_BATCH_DELAY	= 100;						// ms
+	private static final int		EXTRACTOR_WORKERS	= 2;
+	private static final int		EXTRACTOR_REQUESTS	= 200;						// per worker
+	private static final long		EXTRACTOR_TIMEOUT	= 30;						// s
+	private static final int		METADATA_THREADS	= 4;
+
+	private Config				googleConfig;
+	private PlaylistImporter	playlistImporter;
+	private MetadataScheduler	metadataScheduler;
 
 	public SoundPlugin() {
 		super(SoundPlugin.INFO);
@@ -337,7 +381,7 @@ public class SoundPlugin extends Plugin {
 		if (handler instanceof SoundPlayer) {
 			player = (SoundPlayer) handler;
 		} else {
-			player = new SoundPlayer();
+			player = new SoundPlayer(this.metadataScheduler);
 			guild.getAudioManager().setSendingHandler(player);
 		}
 		return player;
@@ -363,21 +407,39 @@ public class SoundPlugin extends Plugin {
 			throw new PluginLoadingException("Pls add your google api key to the config");
 		}
 
+		try {
+			this.playlistImporter = new PlaylistImporter(this.googleConfig.getString("youtubeApiUrl", PlaylistImporter.DEFAULT_API_URL), this.googleConfig.getString("key"));
+		} catch (WrongTypeException | KeyNotFoundException e) {
+			throw new PluginLoadingException("Pls add your google api key to the config");
+		}
+
 		NativUtil.setFolder(new File(this.getPluginFolder(), "cache"));
 
 		JDAPlayerConfig.setFFMPEG_COMMAND(NativUtil.getFFMPEGFile());
 		JDAPlayerConfig.setYOUTUBE_DL_COMMAND(NativUtil.getYoutubeDLFile());
+		JDAPlayerConfig.setINFO_CACHE(new AudioInfoCache(NativUtil.getInfoCacheFolder(), SoundPlugin.INFO_CACHE_TTL, SoundPlugin.INFO_CACHE_MEMORY));
+		final ExtractorPool extractorPool = new ExtractorPool(JDAPlayerConfig.getPYTHON_COMMAND(), NativUtil.getExtractorWorkerFile(), JDAPlayerConfig.getYOUTUBE_DL_COMMAND(), SoundPlugin.EXTRACTOR_WORKERS, SoundPlugin.EXTRACTOR_REQUESTS, SoundPlugin.EXTRACTOR_TIMEOUT, TimeUnit.SECONDS);
+		extractorPool.prestart();
+		JDAPlayerConfig.setEXTRACTOR_POOL(extractorPool);
+		JDAPlayerConfig.setINFO_BATCHER(new AudioInfoBatcher(SoundPlugin.INFO_BATCH_SIZE, SoundPlugin.INFO_BATCH_DELAY, TimeUnit.MILLISECONDS));
+		JDAPlayerConfig.setTRACK_CACHE(new TrackCache(NativUtil.getTrackCacheFolder(), SoundPlugin.TRACK_CACHE_SIZE));
+		JDAPlayerConfig.setPCM_CACHE(new PcmCache(NativUtil.getPcmCacheFolder(), SoundPlugin.PCM_CACHE_SIZE, SoundPlugin.PCM_PROMOTE_AFTER));
+
+		this.metadataScheduler = new MetadataScheduler(SoundPlugin.METADATA_THREADS);
+		JDAPlayerConfig.setEXTRACTION_PERMITS(this.metadataScheduler.getPermits());
 
 		this.registerCommand(new JoinCommand());
 		this.registerCommand(new LeaveCommand());
 		this.registerCommand(new PlayCommand());
 		this.registerCommand(new PauseCommand());
 		this.registerCommand(new SkipCommand());
+		this.registerCommand(new SeekCommand());
 		this.registerCommand(new AgainCommand());
 		this.registerCommand(new VolumeCommand());
 		this.registerCommand(new PlayingCommand());
 		this.registerCommand(new ListCommand());
 		this.registerCommand(new StopCommand());
+		this.registerCommand(new CancelCommand());
 	}
 
 	@Override
@@ -389,6 +451,21 @@ public class SoundPlugin extends Plugin {
 			manager.setSendingHandler(null);
 			manager.closeAudioConnection();
 		}
+
+		if (this.metadataScheduler != null) {
+			this.metadataScheduler.shutdown();
+			this.metadataScheduler = null;
+		}
+
+		if (this.playlistImporter != null) {
+			this.playlistImporter.shutdown();
+			this.playlistImporter = null;
+		}
+
+		if (JDAPlayerConfig.getEXTRACTOR_POOL() != null) {
+			JDAPlayerConfig.getEXTRACTOR_POOL().close();
+			JDAPlayerConfig.setEXTRACTOR_POOL(null);
+		}
 	}
 
 }
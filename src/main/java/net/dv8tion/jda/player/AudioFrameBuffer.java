@@ -0,0 +1,205 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import net.dv8tion.jda.player.source.AudioStream;
+import net.dv8tion.jda.utils.SimpleLog;
+
+/**
+ * Bounded ring of ready-to-send 20ms PCM frames that sits between an {@link AudioStream} and the audio send thread.
+ * <p>
+ * The ring is filled ahead of time by a small pool of producer threads shared by every buffer, so the consumer side
+ * ({@link #poll(byte[])}) never blocks. Like the {@link net.dv8tion.jda.player.source.ProcessPump}, a producer only
+ * reads what the stream has {@link AudioStream#pollFrame(byte[]) available}, and polls each buffer again a little
+ * later, so one slow stream never holds up the others. There is exactly one producer and one consumer per buffer,
+ * which lets the ring get away with two volatile indices instead of a lock.
+ */
+public class AudioFrameBuffer
+{
+    private static final long FILL_INTERVAL = 10; // ms, half a frame
+    private static final ScheduledThreadPoolExecutor PRODUCERS;
+
+    static
+    {
+        PRODUCERS = new ScheduledThreadPoolExecutor(JDAPlayerConfig.getFRAME_BUFFER_THREADS(), r ->
+        {
+            Thread thread = new Thread(r, "JDA-Player FrameBuffer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        PRODUCERS.setRemoveOnCancelPolicy(true);
+    }
+
+    private final AudioStream stream;
+    private final byte[][] frames;
+
+    // writeIndex is only ever written by the producer, readIndex only by the consumer.
+    private volatile long writeIndex = 0;
+    private volatile long readIndex = 0;
+    private volatile boolean finished = false;
+    private volatile boolean closed = false;
+    private volatile ScheduledFuture<?> producer;
+    private volatile Thread waiter;
+
+    public AudioFrameBuffer(AudioStream stream, int depth)
+    {
+        if (stream == null)
+            throw new NullPointerException("Provided stream was null!");
+        if (depth < 1)
+            throw new IllegalArgumentException("Buffer depth must be at least 1 frame!");
+
+        this.stream = stream;
+        this.frames = new byte[depth][MusicPlayer.FRAME_SIZE];
+    }
+
+    public void start()
+    {
+        if (producer != null)
+            throw new IllegalStateException("This AudioFrameBuffer was already started!");
+
+        ScheduledFuture<?> producer = PRODUCERS.scheduleWithFixedDelay(this::produce, 0, FILL_INTERVAL, TimeUnit.MILLISECONDS);
+        this.producer = producer;
+        //The stream may have ended, or the buffer been closed, before the future was published.
+        if (finished)
+            producer.cancel(false);
+    }
+
+    /**
+     * Copies the oldest buffered frame into the provided array. Never blocks.
+     *
+     * @return true if a frame was copied, false if the buffer is currently empty.
+     */
+    public boolean poll(byte[] dest)
+    {
+        long read = readIndex;
+        if (read == writeIndex)
+            return false;
+
+        System.arraycopy(frames[(int) (read % frames.length)], 0, dest, 0, MusicPlayer.FRAME_SIZE);
+        readIndex = read + 1;
+        return true;
+    }
+
+    /**
+     * Waits for the producer to buffer a frame, e.g. the first one of a new stream.
+     *
+     * @return true if a frame is buffered, false if the stream ended without one or the timeout passed.
+     */
+    public boolean awaitFrame(long timeout, TimeUnit unit)
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiter = Thread.currentThread();
+        try
+        {
+            long remaining;
+            while (writeIndex == readIndex && !finished && !closed && (remaining = deadline - System.nanoTime()) > 0)
+                LockSupport.parkNanos(this, remaining);
+            return writeIndex != readIndex;
+        }
+        finally
+        {
+            waiter = null;
+        }
+    }
+
+    /**
+     * @return true once the stream has ended and every buffered frame has been handed out.
+     */
+    public boolean isFinished()
+    {
+        return finished && readIndex == writeIndex;
+    }
+
+    public int getFillLevel()
+    {
+        return (int) (writeIndex - readIndex);
+    }
+
+    public int getCapacity()
+    {
+        return frames.length;
+    }
+
+    public AudioStream getStream()
+    {
+        return stream;
+    }
+
+    /**
+     * Stops producing frames. This does not close the underlying stream, which is still owned by the caller.
+     */
+    public void close()
+    {
+        closed = true;
+        finish();
+    }
+
+    /**
+     * Fills the ring with as many frames as the stream has ready, without blocking.
+     */
+    private void produce()
+    {
+        try
+        {
+            while (!closed && writeIndex - readIndex < frames.length)
+            {
+                int amountRead = stream.pollFrame(frames[(int) (writeIndex % frames.length)]);
+                if (amountRead == 0)
+                    return;
+                if (amountRead < 0)
+                {
+                    finish();
+                    return;
+                }
+                writeIndex++;
+                wakeWaiter();
+            }
+        }
+        catch (IOException e)
+        {
+            if (!closed)
+                SimpleLog.getLog("JDA-Player").log(e);
+            finish();
+        }
+        catch (RuntimeException e)
+        {
+            SimpleLog.getLog("JDA-Player").log(e);
+            finish();
+        }
+    }
+
+    private void finish()
+    {
+        finished = true;
+        ScheduledFuture<?> producer = this.producer;
+        if (producer != null)
+            producer.cancel(false);
+        wakeWaiter();
+    }
+
+    private void wakeWaiter()
+    {
+        Thread waiter = this.waiter;
+        if (waiter != null)
+            LockSupport.unpark(waiter);
+    }
+}
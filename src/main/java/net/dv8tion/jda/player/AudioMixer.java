@@ -0,0 +1,288 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.dv8tion.jda.audio.AudioSendHandler;
+import net.dv8tion.jda.player.source.AudioStream;
+import net.dv8tion.jda.utils.SimpleLog;
+
+/**
+ * Sums any number of inputs into the 20ms frames sent to a guild, e.g. soundboard clips on top of a
+ * {@link MusicPlayer}, which itself is attached as just another input.
+ * <p>
+ * Every input has its own {@link GainStage}. The inputs are added up in an int accumulator and only saturated to 16bit
+ * once, so a loud moment of one input does not clip the others. Stream inputs are read through an
+ * {@link AudioFrameBuffer}, so the send thread never blocks on them, and detach themselves once they have ended.
+ * <p>
+ * Inputs can be attached and detached from any thread. They are kept in a copy-on-write array that the send thread
+ * reads once per frame, and mixing a frame allocates nothing.
+ */
+public class AudioMixer implements AudioSendHandler
+{
+    private static final Input[] NO_INPUTS = new Input[0];
+    private static final int SAMPLES = MusicPlayer.FRAME_SIZE / 2;
+
+    private final AtomicReference<Input[]> inputs = new AtomicReference<>(NO_INPUTS);
+
+    //Only touched by the audio send thread.
+    private final int[] mix = new int[SAMPLES];
+    private final byte[] buffer = new byte[MusicPlayer.FRAME_SIZE];
+
+    /**
+     * Plays the stream until it ends or the input is detached, after which the stream is closed.
+     */
+    public Input attach(AudioStream stream, float volume)
+    {
+        AudioFrameBuffer frameBuffer = new AudioFrameBuffer(stream, Math.max(1, JDAPlayerConfig.getFRAME_BUFFER_DEPTH()));
+        Input input = new StreamInput(frameBuffer, volume);
+        frameBuffer.start();
+        add(input);
+        return input;
+    }
+
+    /**
+     * Mixes in whatever the handler provides, until the input is detached. The handler must provide PCM.
+     */
+    public Input attach(AudioSendHandler handler, float volume)
+    {
+        Input input = new HandlerInput(handler, volume);
+        add(input);
+        return input;
+    }
+
+    public int getInputCount()
+    {
+        return inputs.get().length;
+    }
+
+    /**
+     * Detaches every input.
+     */
+    public void clear()
+    {
+        for (Input input : inputs.getAndSet(NO_INPUTS))
+            input.close();
+    }
+
+    @Override
+    public boolean canProvide()
+    {
+        return inputs.get().length > 0;
+    }
+
+    @Override
+    public byte[] provide20MsAudio()
+    {
+        Input[] inputs = this.inputs.get();
+        boolean mixed = false;
+        for (Input input : inputs)
+        {
+            byte[] frame = input.read();
+            if (frame == null)
+                continue;
+
+            input.gainStage.process(frame, 0, frame.length);
+            if (mixed)
+                accumulate(frame);
+            else
+                load(frame);
+            mixed = true;
+        }
+        if (!mixed)
+            return null;
+
+        saturate();
+        return buffer;
+    }
+
+    private void load(byte[] frame)
+    {
+        for (int i = 0, s = 0; s < SAMPLES; i += 2, s++)
+            mix[s] = (short) ((frame[i] << 8) | (frame[i + 1] & 0xff));
+    }
+
+    private void accumulate(byte[] frame)
+    {
+        for (int i = 0, s = 0; s < SAMPLES; i += 2, s++)
+            mix[s] += (short) ((frame[i] << 8) | (frame[i + 1] & 0xff));
+    }
+
+    private void saturate()
+    {
+        for (int i = 0, s = 0; s < SAMPLES; i += 2, s++)
+        {
+            int sample = mix[s];
+            if (sample > Short.MAX_VALUE)
+                sample = Short.MAX_VALUE;
+            else if (sample < Short.MIN_VALUE)
+                sample = Short.MIN_VALUE;
+            buffer[i] = (byte) (sample >> 8);
+            buffer[i + 1] = (byte) sample;
+        }
+    }
+
+    private void add(Input input)
+    {
+        Input[] current;
+        Input[] next;
+        do
+        {
+            current = inputs.get();
+            next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = input;
+        }
+        while (!inputs.compareAndSet(current, next));
+    }
+
+    /**
+     * @return false if the input was not attached (anymore).
+     */
+    private boolean remove(Input input)
+    {
+        Input[] current;
+        Input[] next;
+        do
+        {
+            current = inputs.get();
+            int index = indexOf(current, input);
+            if (index < 0)
+                return false;
+            next = current.length == 1 ? NO_INPUTS : new Input[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, next.length - index);
+        }
+        while (!inputs.compareAndSet(current, next));
+        return true;
+    }
+
+    private static int indexOf(Input[] inputs, Input input)
+    {
+        for (int i = 0; i < inputs.length; i++)
+        {
+            if (inputs[i] == input)
+                return i;
+        }
+        return -1;
+    }
+
+    public abstract class Input
+    {
+        protected final GainStage gainStage = new GainStage();
+
+        protected Input(float volume)
+        {
+            gainStage.setVolume(volume);
+        }
+
+        public float getVolume()
+        {
+            return gainStage.getVolume();
+        }
+
+        public void setVolume(float volume)
+        {
+            gainStage.setVolume(volume);
+        }
+
+        /**
+         * Removes the input from the mixer. Detaching an input twice, or one that ended, does nothing.
+         */
+        public void detach()
+        {
+            if (remove(this))
+                close();
+        }
+
+        public boolean isAttached()
+        {
+            return indexOf(inputs.get(), this) >= 0;
+        }
+
+        /**
+         * Called by the send thread only.
+         *
+         * @return the next frame, which may be changed in place, or null if there is none right now.
+         */
+        protected abstract byte[] read();
+
+        protected void close() {}
+    }
+
+    private class StreamInput extends Input
+    {
+        private final AudioFrameBuffer frameBuffer;
+        private final byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+
+        private StreamInput(AudioFrameBuffer frameBuffer, float volume)
+        {
+            super(volume);
+            this.frameBuffer = frameBuffer;
+        }
+
+        @Override
+        protected byte[] read()
+        {
+            if (frameBuffer.poll(frame))
+                return frame;
+            if (frameBuffer.isFinished())
+                detach();
+            return null;
+        }
+
+        @Override
+        protected void close()
+        {
+            frameBuffer.close();
+            try
+            {
+                frameBuffer.getStream().close();
+            }
+            catch (IOException e)
+            {
+                SimpleLog.getLog("JDA-Player").log(e);
+            }
+        }
+    }
+
+    private class HandlerInput extends Input
+    {
+        private final AudioSendHandler handler;
+        private final byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+
+        private HandlerInput(AudioSendHandler handler, float volume)
+        {
+            super(volume);
+            this.handler = handler;
+        }
+
+        @Override
+        protected byte[] read()
+        {
+            if (!handler.canProvide())
+                return null;
+            byte[] provided = handler.provide20MsAudio();
+            if (provided == null)
+                return null;
+            //The handler's array is its own, and gain is applied in place.
+            System.arraycopy(provided, 0, frame, 0, MusicPlayer.FRAME_SIZE);
+            return frame;
+        }
+    }
+}
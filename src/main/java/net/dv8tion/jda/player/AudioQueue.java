@@ -0,0 +1,646 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.dv8tion.jda.player.source.AudioSource;
+
+/**
+ * The queue of a {@link MusicPlayer}, which the commands edit while the audio thread takes the next track from it.
+ * <p>
+ * The queue is an immutable, size-indexed tree (an implicit treap), so any version of it can be read without a lock.
+ * Edits build the new version from the old one by copying only the O(log n) nodes on the changed paths and publish it
+ * with a compare-and-set, retrying if another edit got there first. Neither readers nor the audio thread ever block.
+ * <p>
+ * Indexed access, insertion and removal anywhere, as well as taking the head, are O(log n). Bulk inserts are O(k + log
+ * n) for k sources, moves and range removals O(log n). Whatever is read from a {@link #snapshot()} stays consistent,
+ * however the queue is edited meanwhile.
+ * <p>
+ * Finding a source by equality is O(n). A source that is peeked as an {@link Entry} can be checked and taken out again
+ * in O(log n) instead, as long as no edit moved it.
+ */
+public class AudioQueue implements Iterable<AudioSource>
+{
+    private final AtomicReference<Node> root = new AtomicReference<>();
+
+    public AudioQueue() {}
+
+    public AudioQueue(Collection<? extends AudioSource> sources)
+    {
+        root.set(build(sources));
+    }
+
+    public int size()
+    {
+        return size(root.get());
+    }
+
+    public boolean isEmpty()
+    {
+        return root.get() == null;
+    }
+
+    public AudioSource get(int index)
+    {
+        Node root = this.root.get();
+        checkIndex(index, size(root));
+        return get(root, index);
+    }
+
+    /**
+     * @return the first source, or null if the queue is empty.
+     */
+    public AudioSource peekFirst()
+    {
+        Node node = root.get();
+        if (node == null)
+            return null;
+        while (node.left != null)
+            node = node.left;
+        return node.value;
+    }
+
+    /**
+     * @return a random source, or null if the queue is empty.
+     */
+    public AudioSource peekRandom(Random random)
+    {
+        Node root = this.root.get();
+        return root == null ? null : get(root, random.nextInt(root.size));
+    }
+
+    /**
+     * @return the first source and its index, or null if the queue is empty.
+     */
+    public Entry peekFirstEntry()
+    {
+        AudioSource first = peekFirst();
+        return first == null ? null : new Entry(first, 0);
+    }
+
+    /**
+     * @return a random source and its index, or null if the queue is empty.
+     */
+    public Entry peekRandomEntry(Random random)
+    {
+        Node root = this.root.get();
+        if (root == null)
+            return null;
+        int index = random.nextInt(root.size);
+        return new Entry(get(root, index), index);
+    }
+
+    /**
+     * @return true if the source of the entry is still at its index, false once an edit removed or moved it.
+     */
+    public boolean isCurrent(Entry entry)
+    {
+        return isCurrent(root.get(), entry);
+    }
+
+    public boolean contains(Object source)
+    {
+        return indexOf(source) >= 0;
+    }
+
+    public int indexOf(Object source)
+    {
+        return indexOf(root.get(), source);
+    }
+
+    public void add(AudioSource source)
+    {
+        Node node = new Node(source);
+        Node root;
+        do
+            root = this.root.get();
+        while (!this.root.compareAndSet(root, merge(root, node)));
+    }
+
+    public void add(int index, AudioSource source)
+    {
+        Node node = new Node(source);
+        Node root;
+        Node[] parts;
+        do
+        {
+            root = this.root.get();
+            checkPosition(index, size(root));
+            parts = split(root, index);
+        }
+        while (!this.root.compareAndSet(root, merge(merge(parts[0], node), parts[1])));
+    }
+
+    public void addAll(Collection<? extends AudioSource> sources)
+    {
+        Node tree = build(sources);
+        if (tree == null)
+            return;
+
+        Node root;
+        do
+            root = this.root.get();
+        while (!this.root.compareAndSet(root, merge(root, tree)));
+    }
+
+    public void addAll(int index, Collection<? extends AudioSource> sources)
+    {
+        Node tree = build(sources);
+        if (tree == null)
+            return;
+
+        Node root;
+        Node[] parts;
+        do
+        {
+            root = this.root.get();
+            checkPosition(index, size(root));
+            parts = split(root, index);
+        }
+        while (!this.root.compareAndSet(root, merge(merge(parts[0], tree), parts[1])));
+    }
+
+    /**
+     * Removes and returns the first source. This is O(log n), not O(1): like every other edit, it copies the path down
+     * to the head.
+     *
+     * @return the first source, or null if the queue is empty.
+     */
+    public AudioSource pollFirst()
+    {
+        Node root;
+        do
+        {
+            root = this.root.get();
+            if (root == null)
+                return null;
+        }
+        while (!this.root.compareAndSet(root, removeFirst(root)));
+
+        Node first = root;
+        while (first.left != null)
+            first = first.left;
+        return first.value;
+    }
+
+    /**
+     * Removes and returns a random source.
+     *
+     * @return the source, or null if the queue is empty.
+     */
+    public AudioSource pollRandom(Random random)
+    {
+        Node root;
+        int index;
+        do
+        {
+            root = this.root.get();
+            if (root == null)
+                return null;
+            index = random.nextInt(root.size);
+        }
+        while (!this.root.compareAndSet(root, remove(root, index)));
+        return get(root, index);
+    }
+
+    public AudioSource remove(int index)
+    {
+        Node root;
+        do
+        {
+            root = this.root.get();
+            checkIndex(index, size(root));
+        }
+        while (!this.root.compareAndSet(root, remove(root, index)));
+        return get(root, index);
+    }
+
+    /**
+     * Removes the first occurrence of the source.
+     *
+     * @return true if the queue contained the source.
+     */
+    public boolean remove(Object source)
+    {
+        Node root;
+        int index;
+        do
+        {
+            root = this.root.get();
+            index = indexOf(root, source);
+            if (index < 0)
+                return false;
+        }
+        while (!this.root.compareAndSet(root, remove(root, index)));
+        return true;
+    }
+
+    /**
+     * Removes the source of the entry, if it is still at its index.
+     *
+     * @return true if it was.
+     */
+    public boolean remove(Entry entry)
+    {
+        Node root;
+        do
+        {
+            root = this.root.get();
+            if (!isCurrent(root, entry))
+                return false;
+        }
+        while (!this.root.compareAndSet(root, remove(root, entry.index)));
+        return true;
+    }
+
+    /**
+     * Removes the sources from index from, inclusive, to index to, exclusive.
+     *
+     * @return the removed sources, in order.
+     */
+    public List<AudioSource> removeRange(int from, int to)
+    {
+        Node root;
+        Node[] tail;
+        Node[] head;
+        do
+        {
+            root = this.root.get();
+            checkRange(from, to, size(root));
+            tail = split(root, to);
+            head = split(tail[0], from);
+        }
+        while (!this.root.compareAndSet(root, merge(head[0], tail[1])));
+        return new Snapshot(head[1]);
+    }
+
+    /**
+     * Moves the source at index from, so it ends up at index to.
+     */
+    public void move(int from, int to)
+    {
+        Node root;
+        Node moved;
+        do
+        {
+            root = this.root.get();
+            int size = size(root);
+            checkIndex(from, size);
+            checkIndex(to, size);
+            Node[] tail = split(root, from + 1);
+            Node[] head = split(tail[0], from);
+            moved = head[1];
+            Node[] rest = split(merge(head[0], tail[1]), to);
+            moved = merge(merge(rest[0], moved), rest[1]);
+        }
+        while (!this.root.compareAndSet(root, moved));
+    }
+
+    public void shuffle(Random random)
+    {
+        Node root;
+        Node shuffled;
+        do
+        {
+            root = this.root.get();
+            AudioSource[] sources = toArray(root);
+            for (int i = sources.length - 1; i > 0; i--)
+            {
+                int j = random.nextInt(i + 1);
+                AudioSource source = sources[i];
+                sources[i] = sources[j];
+                sources[j] = source;
+            }
+            shuffled = build(sources, sources.length);
+        }
+        while (!this.root.compareAndSet(root, shuffled));
+    }
+
+    public void clear()
+    {
+        root.set(null);
+    }
+
+    /**
+     * @return the current version of the queue, which later edits do not change. Iterating it is O(n), indexed access
+     *         O(log n).
+     */
+    public List<AudioSource> snapshot()
+    {
+        return new Snapshot(root.get());
+    }
+
+    /**
+     * Iterates a {@link #snapshot()}.
+     */
+    @Override
+    public Iterator<AudioSource> iterator()
+    {
+        return new NodeIterator(root.get());
+    }
+
+    @Override
+    public String toString()
+    {
+        return snapshot().toString();
+    }
+
+    /**
+     * A source and the index it was peeked at.
+     */
+    public static final class Entry
+    {
+        private final AudioSource source;
+        private final int index;
+
+        private Entry(AudioSource source, int index)
+        {
+            this.source = source;
+            this.index = index;
+        }
+
+        public AudioSource getSource()
+        {
+            return source;
+        }
+
+        public int getIndex()
+        {
+            return index;
+        }
+    }
+
+    private static class Node
+    {
+        private final AudioSource value;
+        private final int priority;
+        //Only assigned while the node is built, never once it is reachable from the queue.
+        private Node left;
+        private Node right;
+        private int size;
+
+        private Node(AudioSource value)
+        {
+            this(value, ThreadLocalRandom.current().nextInt(), null, null);
+        }
+
+        private Node(AudioSource value, int priority, Node left, Node right)
+        {
+            this.value = value;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+        }
+
+        private Node with(Node left, Node right)
+        {
+            return new Node(value, priority, left, right);
+        }
+    }
+
+    private static class Snapshot extends AbstractList<AudioSource>
+    {
+        private final Node root;
+
+        private Snapshot(Node root)
+        {
+            this.root = root;
+        }
+
+        @Override
+        public AudioSource get(int index)
+        {
+            checkIndex(index, AudioQueue.size(root));
+            return AudioQueue.get(root, index);
+        }
+
+        @Override
+        public int size()
+        {
+            return AudioQueue.size(root);
+        }
+
+        @Override
+        public Iterator<AudioSource> iterator()
+        {
+            return new NodeIterator(root);
+        }
+
+        @Override
+        public int indexOf(Object o)
+        {
+            return AudioQueue.indexOf(root, o);
+        }
+    }
+
+    private static class NodeIterator implements Iterator<AudioSource>
+    {
+        private final Deque<Node> path = new ArrayDeque<>();
+
+        private NodeIterator(Node root)
+        {
+            descend(root);
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public AudioSource next()
+        {
+            Node node = path.pollFirst();
+            if (node == null)
+                throw new NoSuchElementException();
+            descend(node.right);
+            return node.value;
+        }
+
+        private void descend(Node node)
+        {
+            for (; node != null; node = node.left)
+                path.addFirst(node);
+        }
+    }
+
+    private static int size(Node node)
+    {
+        return node == null ? 0 : node.size;
+    }
+
+    private static AudioSource get(Node node, int index)
+    {
+        while (true)
+        {
+            int leftSize = size(node.left);
+            if (index < leftSize)
+                node = node.left;
+            else if (index == leftSize)
+                return node.value;
+            else
+            {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static boolean isCurrent(Node root, Entry entry)
+    {
+        return entry.index < size(root) && get(root, entry.index) == entry.source;
+    }
+
+    private static int indexOf(Node root, Object source)
+    {
+        int index = 0;
+        for (Iterator<AudioSource> it = new NodeIterator(root); it.hasNext(); index++)
+        {
+            if (Objects.equals(it.next(), source))
+                return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Joins two trees, all of a in front of all of b.
+     */
+    private static Node merge(Node a, Node b)
+    {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        if (a.priority >= b.priority)
+            return a.with(a.left, merge(a.right, b));
+        return b.with(merge(a, b.left), b.right);
+    }
+
+    /**
+     * @return the first index sources and the rest.
+     */
+    private static Node[] split(Node node, int index)
+    {
+        if (node == null)
+            return new Node[2];
+
+        int leftSize = size(node.left);
+        if (index <= leftSize)
+        {
+            Node[] parts = split(node.left, index);
+            parts[1] = node.with(parts[1], node.right);
+            return parts;
+        }
+        Node[] parts = split(node.right, index - leftSize - 1);
+        parts[0] = node.with(node.left, parts[0]);
+        return parts;
+    }
+
+    private static Node remove(Node node, int index)
+    {
+        int leftSize = size(node.left);
+        if (index < leftSize)
+            return node.with(remove(node.left, index), node.right);
+        if (index == leftSize)
+            return merge(node.left, node.right);
+        return node.with(node.left, remove(node.right, index - leftSize - 1));
+    }
+
+    private static Node removeFirst(Node node)
+    {
+        if (node.left == null)
+            return node.right;
+        return node.with(removeFirst(node.left), node.right);
+    }
+
+    private static Node build(Collection<? extends AudioSource> sources)
+    {
+        AudioSource[] array = sources.toArray(new AudioSource[sources.size()]);
+        return build(array, array.length);
+    }
+
+    /**
+     * Builds the treap of the sources in O(n), keeping the rightmost path on a stack.
+     */
+    private static Node build(AudioSource[] sources, int length)
+    {
+        Node[] spine = new Node[Math.max(length, 1)];
+        int depth = 0;
+        for (int i = 0; i < length; i++)
+        {
+            Node node = new Node(sources[i]);
+            Node last = null;
+            while (depth > 0 && spine[depth - 1].priority < node.priority)
+                last = spine[--depth];
+            node.left = last;
+            if (depth > 0)
+                spine[depth - 1].right = node;
+            spine[depth++] = node;
+        }
+        if (depth == 0)
+            return null;
+        computeSizes(spine[0]);
+        return spine[0];
+    }
+
+    private static int computeSizes(Node node)
+    {
+        if (node == null)
+            return 0;
+        node.size = computeSizes(node.left) + computeSizes(node.right) + 1;
+        return node.size;
+    }
+
+    private static AudioSource[] toArray(Node root)
+    {
+        AudioSource[] sources = new AudioSource[size(root)];
+        int i = 0;
+        for (Iterator<AudioSource> it = new NodeIterator(root); it.hasNext(); )
+            sources[i++] = it.next();
+        return sources;
+    }
+
+    private static void checkIndex(int index, int size)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    private static void checkPosition(int index, int size)
+    {
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    private static void checkRange(int from, int to, int size)
+    {
+        if (from < 0 || to > size || from > to)
+            throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + size);
+    }
+}
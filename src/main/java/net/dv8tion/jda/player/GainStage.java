@@ -0,0 +1,103 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+/**
+ * Applies volume to 16bit big endian stereo PCM in place, using a Q15 fixed-point gain and saturating arithmetic.
+ * <p>
+ * A new volume is not applied as a hard step. Instead the gain is ramped linearly across the next frame, which avoids
+ * the click a mid-frame jump would cause. At unity gain the frame is left untouched.
+ * <p>
+ * {@link #setVolume(float)} may be called from any thread, {@link #process(byte[], int, int)} only from the audio
+ * thread.
+ */
+public class GainStage
+{
+    public static final int UNITY = 1 << 15;
+    public static final int MAX_GAIN = 0xFFFF; // Just below 2.0, keeps sample * gain inside an int
+
+    private volatile int targetGain = UNITY;
+    private int currentGain = UNITY;
+
+    public void setVolume(float volume)
+    {
+        targetGain = toGain(volume);
+    }
+
+    public float getVolume()
+    {
+        return (float) targetGain / UNITY;
+    }
+
+    public static int toGain(float volume)
+    {
+        if (!(volume > 0))
+            return 0;
+        return Math.min(MAX_GAIN, Math.round(volume * UNITY));
+    }
+
+    public void process(byte[] frame, int offset, int length)
+    {
+        final int target = targetGain;
+        final int start = currentGain;
+
+        if (start == target)
+        {
+            if (target != UNITY)
+                applyConstant(frame, offset, length, target);
+            return;
+        }
+
+        applyRamp(frame, offset, length, start, target);
+        currentGain = target;
+    }
+
+    private static void applyConstant(byte[] frame, int offset, int length, int gain)
+    {
+        final int end = offset + length;
+        for (int i = offset; i < end; i += 2)
+            applySample(frame, i, gain);
+    }
+
+    private static void applyRamp(byte[] frame, int offset, int length, int start, int target)
+    {
+        // The gain steps once per stereo sample pair, in 16.16 fixed point so the ramp needs no division per sample.
+        final int pairs = length / MusicPlayer.PCM_FRAME_SIZE;
+        final long step = ((long) (target - start) << 16) / Math.max(1, pairs);
+        long gainAcc = (long) start << 16;
+
+        final int end = offset + pairs * MusicPlayer.PCM_FRAME_SIZE;
+        for (int i = offset; i < end; i += MusicPlayer.PCM_FRAME_SIZE)
+        {
+            gainAcc += step;
+            final int gain = (int) (gainAcc >> 16);
+            applySample(frame, i, gain);
+            applySample(frame, i + 2, gain);
+        }
+    }
+
+    private static void applySample(byte[] frame, int i, int gain)
+    {
+        int sample = (short) ((frame[i] << 8) | (frame[i + 1] & 0xff));
+        sample = (sample * gain + (1 << 14)) >> 15;
+        if (sample > Short.MAX_VALUE)
+            sample = Short.MAX_VALUE;
+        else if (sample < Short.MIN_VALUE)
+            sample = Short.MIN_VALUE;
+        frame[i] = (byte) (sample >> 8);
+        frame[i + 1] = (byte) sample;
+    }
+}
@@ -3,6 +3,13 @@ package net.dv8tion.jda.player;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import net.dv8tion.jda.player.source.AudioInfoBatcher;
+import net.dv8tion.jda.player.source.AudioInfoCache;
+import net.dv8tion.jda.player.source.ExtractorPool;
+import net.dv8tion.jda.player.source.PcmCache;
+import net.dv8tion.jda.player.source.TrackCache;
 
 public class JDAPlayerConfig {
 
@@ -18,10 +25,94 @@ public class JDAPlayerConfig {
 	private static String		YOUTUBE_DL_COMMAND	= "./youtube-dl";
 	private static String		FFMPEG_COMMAND		= "ffmpeg";
 
+	private static int			FRAME_BUFFER_DEPTH	= 25;	// 500ms of audio
+	private static int			FRAME_BUFFER_THREADS	= 2;
+	private static int			FRAME_READ_DEADLINE	= 10;	// ms
+	private static int			PRELOAD_TIME		= 10000;	// ms
+	private static int			CROSSFADE_TIME		= 0;		// ms
+	private static int			PUMP_THREADS		= 2;
+	private static boolean		DIRECT_PIPE			= true;
+	private static boolean		DIRECT_MEDIA_URL	= true;
+	private static boolean		LOUDNESS_NORMALIZATION	= false;
+	private static TrackCache	TRACK_CACHE			= null;
+	private static PcmCache		PCM_CACHE			= null;
+	private static AudioInfoCache	INFO_CACHE			= null;
+	private static AudioInfoBatcher	INFO_BATCHER		= null;
+	private static ExtractorPool	EXTRACTOR_POOL		= null;
+	private static Semaphore	EXTRACTION_PERMITS	= null;
+
+	public static int getCROSSFADE_TIME() {
+		return JDAPlayerConfig.CROSSFADE_TIME;
+	}
+
+	public static Semaphore getEXTRACTION_PERMITS() {
+		return JDAPlayerConfig.EXTRACTION_PERMITS;
+	}
+
+	public static ExtractorPool getEXTRACTOR_POOL() {
+		return JDAPlayerConfig.EXTRACTOR_POOL;
+	}
+
 	public static List<String> getFFMPEG_LAUNCH_ARGS() {
 		return JDAPlayerConfig.FFMPEG_LAUNCH_ARGS;
 	}
 
+	public static int getFRAME_BUFFER_DEPTH() {
+		return JDAPlayerConfig.FRAME_BUFFER_DEPTH;
+	}
+
+	public static int getFRAME_BUFFER_THREADS() {
+		return JDAPlayerConfig.FRAME_BUFFER_THREADS;
+	}
+
+	public static int getFRAME_READ_DEADLINE() {
+		return JDAPlayerConfig.FRAME_READ_DEADLINE;
+	}
+
+	public static AudioInfoBatcher getINFO_BATCHER() {
+		return JDAPlayerConfig.INFO_BATCHER;
+	}
+
+	public static AudioInfoCache getINFO_CACHE() {
+		return JDAPlayerConfig.INFO_CACHE;
+	}
+
+	public static PcmCache getPCM_CACHE() {
+		return JDAPlayerConfig.PCM_CACHE;
+	}
+
+	public static int getPRELOAD_TIME() {
+		return JDAPlayerConfig.PRELOAD_TIME;
+	}
+
+	public static boolean isDIRECT_MEDIA_URL() {
+		return JDAPlayerConfig.DIRECT_MEDIA_URL;
+	}
+
+	public static boolean isDIRECT_PIPE() {
+		return JDAPlayerConfig.DIRECT_PIPE;
+	}
+
+	public static boolean isLOUDNESS_NORMALIZATION() {
+		return JDAPlayerConfig.LOUDNESS_NORMALIZATION;
+	}
+
+	public static String getPYTHON_COMMAND() {
+		return JDAPlayerConfig.PYTHON_COMMAND;
+	}
+
+	public static int getPUMP_THREADS() {
+		return JDAPlayerConfig.PUMP_THREADS;
+	}
+
+	public static TrackCache getTRACK_CACHE() {
+		return JDAPlayerConfig.TRACK_CACHE;
+	}
+
+	public static String getYOUTUBE_DL_COMMAND() {
+		return JDAPlayerConfig.YOUTUBE_DL_COMMAND;
+	}
+
 	public static List<String> getYOUTUBE_DL_LAUNCH_ARGS() {
 		return JDAPlayerConfig.YOUTUBE_DL_LAUNCH_ARGS;
 	}
@@ -29,6 +120,7 @@ public class JDAPlayerConfig {
 	private static void initFFMPEG_LAUNCH_ARGS() {
 		JDAPlayerConfig.FFMPEG_LAUNCH_ARGS = Collections.unmodifiableList(Arrays.asList(
 				JDAPlayerConfig.FFMPEG_COMMAND, // Program launch
+				"-nostats",                     // No progress output on STDerr, the position is counted in frames
 				"-i", "-",                      // Input file, specifies to read from STDin (pipe)
 				"-f", "s16be",                  // Format. PCM, signed, 16bit, Big Endian
 				"-ac", "2",                     // Channels. Specify 2 for stereo audio.
@@ -49,16 +141,155 @@ public class JDAPlayerConfig {
 		));
 	}
 
+	/**
+	 * Sets the default amount of milliseconds consecutive tracks overlap, up to
+	 * {@link MusicPlayer#MAX_CROSSFADE_TIME}. 0 disables crossfading.
+	 */
+	public static void setCROSSFADE_TIME(final int crossfadeTime) {
+		if (crossfadeTime < 0 || crossfadeTime > MusicPlayer.MAX_CROSSFADE_TIME) {
+			throw new IllegalArgumentException("Crossfade time must be between 0 and " + MusicPlayer.MAX_CROSSFADE_TIME + "ms!");
+		}
+		JDAPlayerConfig.CROSSFADE_TIME = crossfadeTime;
+	}
+
+	/**
+	 * Sets whether ffmpeg reads remote tracks from their media URL itself, instead of youtube-dl downloading them for
+	 * it. Tracks that are being written into the track cache are always downloaded by youtube-dl. With a
+	 * {@link #setTRACK_CACHE(TrackCache) track cache} set, that is the first play of every track, so the media URL is
+	 * then only read for seeks, and for plays of a track that is already being cached by another player.
+	 */
+	public static void setDIRECT_MEDIA_URL(final boolean directMediaUrl) {
+		JDAPlayerConfig.DIRECT_MEDIA_URL = directMediaUrl;
+	}
+
+	/**
+	 * Sets whether youtube-dl's output is handed to ffmpeg by the operating system instead of being copied through the
+	 * JVM.
+	 */
+	public static void setDIRECT_PIPE(final boolean directPipe) {
+		JDAPlayerConfig.DIRECT_PIPE = directPipe;
+	}
+
+	/**
+	 * Sets the permits every youtube-dl extraction of an info or a media URL takes one of, whether a worker answers it
+	 * or a process of its own. This bounds the extractions of all threads together, the player's loader included. null
+	 * does not bound them.
+	 */
+	public static void setEXTRACTION_PERMITS(final Semaphore permits) {
+		JDAPlayerConfig.EXTRACTION_PERMITS = permits;
+	}
+
+	/**
+	 * Sets the pool of resident youtube-dl workers that resolve infos and media URLs. null starts youtube-dl for every
+	 * request.
+	 */
+	public static void setEXTRACTOR_POOL(final ExtractorPool pool) {
+		JDAPlayerConfig.EXTRACTOR_POOL = pool;
+	}
+
 	public static void setFFMPEG_COMMAND(final String command) {
 		JDAPlayerConfig.FFMPEG_COMMAND = command;
 		JDAPlayerConfig.initFFMPEG_LAUNCH_ARGS();
     }
 
+	/**
+	 * Sets the default amount of 20ms frames a {@link MusicPlayer} reads ahead of the audio send thread. 0 disables the
+	 * read-ahead and makes the send thread read directly from the stream.
+	 */
+	public static void setFRAME_BUFFER_DEPTH(final int depth) {
+		if (depth < 0) {
+			throw new IllegalArgumentException("Frame buffer depth cannot be negative!");
+		}
+		JDAPlayerConfig.FRAME_BUFFER_DEPTH = depth;
+	}
+
+	/**
+	 * Sets the amount of threads that fill the frame buffers of every player and mixer. Only has an effect before the
+	 * first frame buffer is started.
+	 */
+	public static void setFRAME_BUFFER_THREADS(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one frame buffer thread is required!");
+		}
+		JDAPlayerConfig.FRAME_BUFFER_THREADS = threads;
+	}
+
+	/**
+	 * Sets the default amount of milliseconds the audio send thread waits for a frame to complete when a player reads
+	 * without a frame buffer. Missing the deadline sends a frame of silence.
+	 */
+	public static void setFRAME_READ_DEADLINE(final int deadline) {
+		if (deadline < 0) {
+			throw new IllegalArgumentException("Frame read deadline cannot be negative!");
+		}
+		JDAPlayerConfig.FRAME_READ_DEADLINE = deadline;
+	}
+
+	/**
+	 * Sets the batcher that combines the info extractions of remote tracks that miss the cache into shared youtube-dl
+	 * processes or worker requests. null extracts every track on its own.
+	 */
+	public static void setINFO_BATCHER(final AudioInfoBatcher batcher) {
+		JDAPlayerConfig.INFO_BATCHER = batcher;
+	}
+
+	/**
+	 * Sets the cache the info of remote tracks is looked up in before youtube-dl is asked. null disables it.
+	 */
+	public static void setINFO_CACHE(final AudioInfoCache cache) {
+		JDAPlayerConfig.INFO_CACHE = cache;
+	}
+
+	/**
+	 * Sets whether players bring tracks to the same loudness by default. Off unless set, since it changes how every
+	 * track sounds. The loudness measured while a track plays is kept in the {@link #setINFO_CACHE(AudioInfoCache) info
+	 * cache}, if there is one.
+	 */
+	public static void setLOUDNESS_NORMALIZATION(final boolean loudnessNormalization) {
+		JDAPlayerConfig.LOUDNESS_NORMALIZATION = loudnessNormalization;
+	}
+
+	/**
+	 * Sets the cache that frequently played tracks are decoded into. null disables it.
+	 */
+	public static void setPCM_CACHE(final PcmCache cache) {
+		JDAPlayerConfig.PCM_CACHE = cache;
+	}
+
+	/**
+	 * Sets the default amount of milliseconds before the end of a track at which a player starts opening the next one.
+	 * 0 disables preloading.
+	 */
+	public static void setPRELOAD_TIME(final int preloadTime) {
+		if (preloadTime < 0) {
+			throw new IllegalArgumentException("Preload time cannot be negative!");
+		}
+		JDAPlayerConfig.PRELOAD_TIME = preloadTime;
+	}
+
+	/**
+	 * Sets the amount of threads that drain the stderr of every stream's processes. Only has an effect before the first
+	 * stream is opened.
+	 */
+	public static void setPUMP_THREADS(final int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least one pump thread is required!");
+		}
+		JDAPlayerConfig.PUMP_THREADS = threads;
+	}
+
 	public static void setPYTHON_COMMAND(final String command) {
 		JDAPlayerConfig.PYTHON_COMMAND = command;
 		JDAPlayerConfig.initYOUTUBE_DL_LAUNCH_ARGS();
     }
 
+	/**
+	 * Sets the cache remote tracks are kept in after they were streamed once. null disables caching.
+	 */
+	public static void setTRACK_CACHE(final TrackCache cache) {
+		JDAPlayerConfig.TRACK_CACHE = cache;
+	}
+
 	public static void setYOUTUBE_DL_COMMAND(final String command) {
 		JDAPlayerConfig.YOUTUBE_DL_COMMAND = command;
 		JDAPlayerConfig.initYOUTUBE_DL_LAUNCH_ARGS();
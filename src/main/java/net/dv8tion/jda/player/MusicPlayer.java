@@ -16,33 +16,218 @@
 package net.dv8tion.jda.player;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import net.dv8tion.jda.audio.AudioConnection;
 import net.dv8tion.jda.audio.AudioSendHandler;
+import net.dv8tion.jda.player.dsp.FilterChain;
+import net.dv8tion.jda.player.dsp.LoudnessNormalizer;
+import net.dv8tion.jda.player.dsp.TimeScaler;
+import net.dv8tion.jda.player.source.AudioInfo;
+import net.dv8tion.jda.player.source.AudioInfoCache;
 import net.dv8tion.jda.player.source.AudioSource;
 import net.dv8tion.jda.player.source.AudioStream;
 import net.dv8tion.jda.player.source.AudioTimestamp;
+import net.dv8tion.jda.player.source.PcmCache;
 import net.dv8tion.jda.utils.SimpleLog;
 
+/**
+ * Plays the tracks of its {@link AudioQueue} to JDA's audio send thread.
+ * <p>
+ * Everything the send thread looks at, the state and the track being played, is held by one immutable
+ * {@link Playback}. Commands move the player from one playback to the next with a compare-and-set, and whoever
+ * replaces a track closes it. The send thread reads the playback once per frame, so it never waits for a command and
+ * never sees a state together with a track that does not belong to it.
+ * <p>
+ * Tracks are opened on the {@link #LOADER} while the player is {@link State#LOADING} and silent, so neither commands
+ * nor the send thread wait for youtube-dl or ffmpeg to start. A track is only published once its first frame is ready.
+ * A later skip or stop simply wins over a load, which is then cancelled and its track thrown away.
+ * <p>
+ * With a crossfade time set, the next track is preloaded early enough to start fading in while the current one fades
+ * out. The playback of a fade holds both tracks, and the send thread blends them into the same frame.
+ * <p>
+ * With loudness normalization on, every track is measured while it plays and brought to the same loudness, with a
+ * limiter catching the peaks of tracks that had to be boosted. It is off unless
+ * {@link JDAPlayerConfig#setLOUDNESS_NORMALIZATION(boolean) enabled} or turned on for a single player. The measurement is kept in the {@link JDAPlayerConfig#getINFO_CACHE() info cache}, so the next play of the track starts
+ * at the right level.
+ */
 public class MusicPlayer implements AudioSendHandler
 {
     public static final int PCM_FRAME_SIZE = 4;
-    protected LinkedList<AudioSource> audioQueue = new LinkedList<>();
-    protected AudioSource previousAudioSource = null;
-    protected AudioSource currentAudioSource = null;
-    protected AudioStream currentAudioStream = null;
-    protected State state = State.STOPPED;
-    protected boolean autoContinue = true;
-    protected boolean shuffle = false;
-    protected boolean repeat = false;
-    protected float volume = 1.0F;
+    public static final int FRAME_SIZE = AudioConnection.OPUS_FRAME_SIZE * PCM_FRAME_SIZE;
+    public static final int MAX_CROSSFADE_TIME = 10000; // ms
+
+    //Opens streams ahead of time and resolves track info, so neither happens on the audio send thread.
+    protected static final ExecutorService LOADER = Executors.newCachedThreadPool(r ->
+    {
+        Thread thread = new Thread(r, "JDA-Player Loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int PRELOAD_CHECK_INTERVAL = 50; // frames, once per second
+    private static final long FIRST_FRAME_TIMEOUT = 10000; // ms, after which a track plays even if it is not ready
+    private static final double MIN_STORED_LOUDNESS_TIME = 30; // s of a track that have to be measured to store it
+    protected final AudioQueue audioQueue = new AudioQueue();
+    protected final AtomicReference<Playback> playback = new AtomicReference<>(Playback.STOPPED);
+    protected final AtomicReference<PreloadedTrack> preloadedTrack = new AtomicReference<>();
+    protected final AtomicReference<CompletableFuture<Void>> pendingSeek = new AtomicReference<>();
+    protected volatile int bufferDepth = JDAPlayerConfig.getFRAME_BUFFER_DEPTH();
+    protected volatile long underruns = 0;
+    protected final AtomicLong paddedFrames = new AtomicLong();
+    protected volatile long readDeadline = TimeUnit.MILLISECONDS.toNanos(JDAPlayerConfig.getFRAME_READ_DEADLINE());
+    protected volatile long preloadTime = JDAPlayerConfig.getPRELOAD_TIME();
+    protected volatile long crossfadeTime = JDAPlayerConfig.getCROSSFADE_TIME();
+    protected volatile boolean loudnessNormalization = JDAPlayerConfig.isLOUDNESS_NORMALIZATION();
+    protected volatile TrackDuration duration = null;
+    protected int framesSincePreloadCheck = 0;
+    protected volatile long lastSeekLatency = -1;
+    protected volatile boolean autoContinue = true;
+    protected volatile boolean shuffle = false;
+    protected volatile boolean repeat = false;
+    protected volatile float volume = 1.0F;
+    protected final GainStage gainStage = new GainStage();
+    protected final FilterChain filters = new FilterChain();
+    protected final TimeScaler timeScaler = new TimeScaler();
+    protected final TimeScaler fadeTimeScaler = new TimeScaler();
+    protected final LoudnessNormalizer normalizer = new LoudnessNormalizer();
+    protected final LoudnessNormalizer fadeNormalizer = new LoudnessNormalizer();
 
     protected enum State
     {
-        PLAYING, PAUSED, STOPPED;
+        PLAYING, PAUSED, STOPPED, LOADING;
+    }
+
+    /**
+     * An opened track. Only the audio send thread writes to it once it is published.
+     */
+    protected static final class Track
+    {
+        protected final AudioSource source;
+        protected final AudioStream stream;
+        protected final AudioFrameBuffer frameBuffer;
+        //Where in the track the stream starts, in ms.
+        protected final long positionOffset;
+        //How much of the stream has been handed out, in microseconds of the track. 20ms per frame unless the speed is changed.
+        protected volatile long microsProvided = 0;
+        //System.nanoTime() of the seek that opened the stream until its first frame was provided, 0 otherwise.
+        protected volatile long seekStarted;
+        //Read ahead by the loader when there is no frame buffer, handed out before the rest of the stream.
+        protected byte[] firstFrame;
+        //Resolved by the loader, null until then.
+        protected volatile AudioInfo info;
+
+        protected Track(AudioSource source, AudioStream stream, AudioFrameBuffer frameBuffer, long positionOffset, long seekStarted)
+        {
+            this.source = source;
+            this.stream = stream;
+            this.frameBuffer = frameBuffer;
+            this.positionOffset = positionOffset;
+            this.seekStarted = seekStarted;
+        }
+
+        protected long getPosition()
+        {
+            return positionOffset + microsProvided / 1000;
+        }
+    }
+
+    /**
+     * What the player is doing. Never changed, only replaced as a whole.
+     */
+    protected static final class Playback
+    {
+        protected static final Playback STOPPED = new Playback(State.STOPPED, null, null, null, false);
+
+        protected final State state;
+        //The track being played or paused, null otherwise.
+        protected final Track track;
+        protected final AudioSource previous;
+        //The load of a LOADING player, which pausing and resuming keep.
+        protected final CompletableFuture<Track> load;
+        //Whether a LOADING player starts playing once the track is open, or stays paused.
+        protected final boolean autoPlay;
+        //The track fading out while track fades in, null unless crossfading.
+        protected final Track fadeOut;
+
+        protected Playback(State state, Track track, AudioSource previous)
+        {
+            this(state, track, previous, null, false, null);
+        }
+
+        protected Playback(State state, Track track, AudioSource previous, CompletableFuture<Track> load, boolean autoPlay)
+        {
+            this(state, track, previous, load, autoPlay, null);
+        }
+
+        protected Playback(State state, Track track, AudioSource previous, CompletableFuture<Track> load, boolean autoPlay, Track fadeOut)
+        {
+            this.state = state;
+            this.track = track;
+            this.previous = previous;
+            this.load = load;
+            this.autoPlay = autoPlay;
+            this.fadeOut = fadeOut;
+        }
+
+        //The source that becomes the previous one once this playback is left.
+        protected AudioSource getLeaving()
+        {
+            return track != null ? track.source : previous;
+        }
+    }
+
+    /**
+     * The duration of a source. Published as a whole, so the duration is never read together with another source.
+     */
+    protected static final class TrackDuration
+    {
+        protected final AudioSource source;
+        protected final long millis;
+
+        protected TrackDuration(AudioSource source, long millis)
+        {
+            this.source = source;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * The time scaling of one track. Only the audio send thread touches it.
+     */
+    protected static final class Scaling
+    {
+        protected final TimeScaler scaler;
+        //The track the scaler is engaged for. It stays engaged until the track changes, even if the speed is reset.
+        protected Track track;
+
+        protected Scaling(TimeScaler scaler)
+        {
+            this.scaler = scaler;
+        }
+    }
+
+    /**
+     * The loudness measurement of one track. Only the audio send thread touches it.
+     */
+    protected static final class Normalization
+    {
+        protected final LoudnessNormalizer normalizer;
+        //The source being measured, and its info once known.
+        protected AudioSource source;
+        protected AudioInfo info;
+
+        protected Normalization(LoudnessNormalizer normalizer)
+        {
+            this.normalizer = normalizer;
+        }
     }
 
     public void setRepeat(boolean repeat)
@@ -63,10 +248,166 @@ public class MusicPlayer implements AudioSendHandler
     public void setVolume(float volume)
     {
         this.volume = volume;
+        this.gainStage.setVolume(volume);
+    }
+
+    /**
+     * @return the effects applied to every frame before the volume. Filters can be added and removed while playing.
+     */
+    public FilterChain getFilters()
+    {
+        return filters;
+    }
+
+    /**
+     * Speeds playback up or slows it down without changing the pitch, between {@link TimeScaler#MIN_SPEED} and
+     * {@link TimeScaler#MAX_SPEED}. Takes effect with the next frame, without reopening the track.
+     */
+    public void setTempo(double tempo)
+    {
+        timeScaler.setTempo(tempo);
+        fadeTimeScaler.setTempo(tempo);
+    }
+
+    public double getTempo()
+    {
+        return timeScaler.getTempo();
+    }
+
+    /**
+     * Changes speed and pitch together, like playing a record faster or slower. Takes effect with the next frame. With
+     * {@link #setTempo(double)} set to the inverse, only the pitch changes.
+     */
+    public void setRate(double rate)
+    {
+        timeScaler.setRate(rate);
+        fadeTimeScaler.setRate(rate);
+    }
+
+    public double getRate()
+    {
+        return timeScaler.getRate();
+    }
+
+    /**
+     * Sets how many 20ms frames are read ahead of the audio send thread. Takes effect when the next track is loaded.
+     * 0 disables the read-ahead, so frames are read from the stream on the audio send thread itself.
+     */
+    public void setBufferDepth(int bufferDepth)
+    {
+        if (bufferDepth < 0)
+            throw new IllegalArgumentException("Buffer depth cannot be negative!");
+        this.bufferDepth = bufferDepth;
+    }
+
+    public int getBufferDepth()
+    {
+        return bufferDepth;
+    }
+
+    /**
+     * @return the amount of frames currently waiting in the read-ahead buffer.
+     */
+    public int getBufferFill()
+    {
+        Track track = playback.get().track;
+        return track != null && track.frameBuffer != null ? track.frameBuffer.getFillLevel() : 0;
+    }
+
+    /**
+     * @return the amount of frames that could not be provided because the read-ahead buffer ran dry.
+     */
+    public long getUnderruns()
+    {
+        return underruns;
+    }
+
+    /**
+     * @return the amount of frames that had to be padded with silence, either because a stream ended mid-frame or
+     *          because a frame was not complete by its read deadline.
+     */
+    public long getPaddedFrames()
+    {
+        Track track = playback.get().track;
+        return paddedFrames.get() + (track != null ? track.stream.getPaddedFrames() : 0);
+    }
+
+    /**
+     * Sets how long the audio send thread waits for a frame to complete when the read-ahead buffer is disabled.
+     */
+    public void setReadDeadline(long deadline, TimeUnit unit)
+    {
+        this.readDeadline = unit.toNanos(deadline);
+    }
+
+    /**
+     * Sets how long before the end of the current track the next track's stream is opened, so that it can take over
+     * without a gap. 0 disables preloading.
+     */
+    public void setPreloadTime(long preloadTime, TimeUnit unit)
+    {
+        this.preloadTime = unit.toMillis(preloadTime);
+        if (this.preloadTime <= 0)
+            discardPreload();
+    }
+
+    public long getPreloadTime(TimeUnit unit)
+    {
+        return unit.convert(preloadTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets how long consecutive tracks overlap, the next one fading in while the current one fades out. The next track
+     * is preloaded this much earlier than {@link #setPreloadTime(long, TimeUnit)} says. 0 disables crossfading, and
+     * a fade only starts if the duration of the current track is known.
+     */
+    public void setCrossfadeTime(long crossfadeTime, TimeUnit unit)
+    {
+        long millis = unit.toMillis(crossfadeTime);
+        if (millis < 0 || millis > MAX_CROSSFADE_TIME)
+            throw new IllegalArgumentException("Crossfade time must be between 0 and " + MAX_CROSSFADE_TIME + "ms!");
+        this.crossfadeTime = millis;
+    }
+
+    public long getCrossfadeTime(TimeUnit unit)
+    {
+        return unit.convert(crossfadeTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets whether tracks are brought to the same loudness. A track played before starts at its level right away, any
+     * other is measured while it plays and eased towards it after a few seconds. Applies before the filters and the
+     * volume.
+     */
+    public void setLoudnessNormalization(boolean loudnessNormalization)
+    {
+        this.loudnessNormalization = loudnessNormalization;
+    }
+
+    public boolean isLoudnessNormalization()
+    {
+        return loudnessNormalization;
+    }
+
+    /**
+     * @param target
+     *          The loudness tracks are brought to in LUFS, {@link LoudnessNormalizer#DEFAULT_TARGET} by default.
+     */
+    public void setLoudnessTarget(double target)
+    {
+        normalizer.setTarget(target);
+        fadeNormalizer.setTarget(target);
+    }
+
+    public double getLoudnessTarget()
+    {
+        return normalizer.getTarget();
     }
 
     public void setShuffle(boolean shuffle)
     {
+        if (this.shuffle != shuffle)
+            discardPreload();
         this.shuffle = shuffle;
     }
 
@@ -82,33 +423,109 @@ public class MusicPlayer implements AudioSendHandler
 
     public void skipToNext()
     {
-        playNext(false);
+        Playback current;
+        do
+            current = playback.get();
+        while (!playNext(current, false));
         //TODO: fire onSkip
     }
 
-    public LinkedList<AudioSource> getAudioQueue()
+    public AudioQueue getAudioQueue()
     {
         return audioQueue;
     }
 
+    /**
+     * @return the source being played or paused, or null while stopped or loading.
+     */
     public AudioSource getCurrentAudioSource()
     {
-        return currentAudioSource;
+        Track track = playback.get().track;
+        return track != null ? track.source : null;
     }
 
     public AudioSource getPreviousAudioSource()
     {
-        return previousAudioSource;
+        return playback.get().previous;
     }
 
+    /**
+     * @return the position within the current track that listeners have actually heard, or null if nothing is loaded.
+     */
     public AudioTimestamp getCurrentTimestamp()
     {
-        if (currentAudioStream != null)
-            return currentAudioStream.getCurrentTimestamp();
+        Track track = playback.get().track;
+        if (track != null)
+            return AudioTimestamp.fromMilliseconds(track.getPosition());
         else
             return null;
     }
 
+    /**
+     * @return the position within the current track in milliseconds, counted from the frames handed out by
+     *          {@link #provide20MsAudio()}. With the tempo or rate changed, a frame covers more or less of the track.
+     */
+    public long getPosition()
+    {
+        Track track = playback.get().track;
+        return track != null ? track.getPosition() : 0;
+    }
+
+    /**
+     * Jumps to the given position within the current track.
+     * <p>
+     * The new stream is opened on the loader while the old one keeps playing, and takes over once its first frame is
+     * ready, so apart from the jump itself playback continues without a gap. A later seek cancels this one.
+     *
+     * @return completes once the jump happened or turned out to be pointless, or exceptionally with an
+     *          {@link UnsupportedOperationException} if the current {@link AudioSource} cannot seek.
+     * @throws IllegalStateException
+     *          If no track is loaded.
+     */
+    public CompletableFuture<Void> seek(AudioTimestamp position)
+    {
+        Track track = playback.get().track;
+        if (track == null)
+            throw new IllegalStateException("Cannot seek when no track is loaded!");
+
+        long started = System.nanoTime();
+        CompletableFuture<Void> seek = new CompletableFuture<>();
+        CompletableFuture<Void> superseded = pendingSeek.getAndSet(seek);
+        if (superseded != null)
+            superseded.cancel(false);
+
+        LOADER.execute(() ->
+        {
+            try
+            {
+                if (seek.isDone())
+                    return;
+                Track seeked = open(track.source, position, started);
+                if (seeked != null && !(awaitFirstFrame(seeked, seek) && publishSeek(seeked, seek)))
+                    close(seeked);
+                seek.complete(null);
+            }
+            catch (RuntimeException e)
+            {
+                seek.completeExceptionally(e);
+            }
+            finally
+            {
+                pendingSeek.compareAndSet(seek, null);
+            }
+        });
+        return seek;
+    }
+
+    /**
+     * @return how many milliseconds it took the last {@link #seek(AudioTimestamp)} until the first frame from the new
+     *          position was provided, or -1 if there was none yet.
+     */
+    public long getLastSeekLatency()
+    {
+        return lastSeekLatency;
+    }
+
     // ============ JDA Player interface overrides =============
 
     public void play()
@@ -118,181 +535,789 @@ public class MusicPlayer implements AudioSendHandler
 
     public void pause()
     {
-        if (state == State.PAUSED)
-            return;
-
-        if (state == State.STOPPED)
-            throw new IllegalStateException("Cannot pause a stopped player!");
-
-        state = State.PAUSED;
-        //TODO: fire onPause
+        while (true)
+        {
+            Playback current = playback.get();
+            switch (current.state)
+            {
+                case PAUSED:
+                    return;
+                case STOPPED:
+                    throw new IllegalStateException("Cannot pause a stopped player!");
+                case LOADING:
+                    if (!current.autoPlay || transition(current, new Playback(State.LOADING, null, current.previous, current.load, false)))
+                        return;
+                    break;
+                case PLAYING:
+                    if (transition(current, new Playback(State.PAUSED, current.track, current.previous)))
+                        return;   //TODO: fire onPause
+                    break;
+            }
+        }
     }
 
     @Override
     public boolean canProvide()
     {
-        return state.equals(State.PLAYING);
+        return playback.get().state == State.PLAYING;
     }
 
-    private byte[] buffer = new byte[AudioConnection.OPUS_FRAME_SIZE * PCM_FRAME_SIZE];
+    //Only touched by the audio send thread.
+    private byte[] buffer = new byte[FRAME_SIZE];
+    private final byte[] scalerInput = new byte[FRAME_SIZE];
+    private final byte[] fadeBuffer = new byte[FRAME_SIZE];
+    private int fadeFrame;
+    private int fadeFrames;
+    //The scaling and measurement of the playing track, and the ones the outgoing track keeps while fading out. Swapped
+    // when a fade starts.
+    private Scaling scaling = new Scaling(timeScaler);
+    private Scaling fadeScaling = new Scaling(fadeTimeScaler);
+    private Normalization normalization = new Normalization(normalizer);
+    private Normalization fadeNormalization = new Normalization(fadeNormalizer);
 
     @Override
     public byte[] provide20MsAudio()
     {
-//        if (currentAudioStream == null || audioFormat == null)
-//            throw new IllegalStateException("The Audio source was never set for this player!\n" +
-//                    "Please provide an AudioInputStream using setAudioSource.");
+        Playback current = playback.get();
+        if (current.state != State.PLAYING)
+            return null;
+
+        Track track = current.track;
         try
         {
-            int amountRead = currentAudioStream.read(buffer, 0, buffer.length);
-            if (amountRead > -1)
+            int amountRead = readScaled(track);
+            if (amountRead > 0)
             {
-                if (amountRead<buffer.length) {
-                    Arrays.fill(buffer, amountRead, buffer.length - 1, (byte) 0);
-                }
-                if (volume != 1) {
-                    for (int i = 0; i < buffer.length; i+=2) {
-                        short sample = (short) ((buffer[i+1] & 0xff) | (buffer[i] << 8));
-                        sample = (short) (sample * volume);
-                        buffer[i+1] = (byte)(sample & 0xff);
-                        buffer[i] = (byte)((sample >> 8) & 0xff);
-                    }
+                if (loudnessNormalization)
+                    normalize(normalization, track, buffer);
+                if (current.fadeOut != null)
+                    crossfade(current);
+                else if (crossfadeTime > 0)
+                    checkCrossfade(current);
+                provided(track);
+                if (++framesSincePreloadCheck >= PRELOAD_CHECK_INTERVAL)
+                {
+                    framesSincePreloadCheck = 0;
+                    checkPreload(track);
                 }
                 return buffer;
             }
+            else if (amountRead == 0)
+            {
+                underruns++;
+                return null;
+            }
             else
             {
+                finishNormalizing(normalization);
                 if (autoContinue)
                 {
                     if(repeat)
                     {
-                        reload0(true, false);
+                        reload0(current, true);
                         //TODO: fire onRepeat
                     }
                     else
                     {
-                        playNext(true);
+                        playNext(current, true);
                     }
                 }
                 else
-                    stop0(true);
+                    stop0(current, true);
+
+                //A preloaded track is ready right away, so don't leave a gap of a frame.
+                Playback next = playback.get();
+                if (next.state == State.PLAYING && next.track != track && readScaled(next.track) > 0)
+                {
+                    if (loudnessNormalization)
+                        normalize(normalization, next.track, buffer);
+                    provided(next.track);
+                    return buffer;
+                }
                 return null;
             }
         }
         catch (IOException e)
         {
-            SimpleLog.getLog("JDA-Player").log(e);
+            //A track that was skipped or stopped meanwhile may fail its last read, that is no error.
+            if (playback.get().track == track)
+                SimpleLog.getLog("JDA-Player").log(e);
         }
         return null;
     }
 
     public void stop()
     {
-        stop0(true);
+        discardPreload();
+        Playback current;
+        do
+            current = playback.get();
+        while (!stop0(current, true));
     }
 
     public boolean isPlaying()
     {
-        return state == State.PLAYING;
+        return playback.get().state == State.PLAYING;
     }
 
     public boolean isPaused()
     {
-        return state == State.PAUSED;
+        return playback.get().state == State.PAUSED;
     }
 
     public boolean isStopped()
     {
-        return state == State.STOPPED;
+        return playback.get().state == State.STOPPED;
+    }
+
+    /**
+     * @return true while the next track is being opened.
+     */
+    public boolean isLoading()
+    {
+        return playback.get().state == State.LOADING;
     }
 
     // ========= Internal Functions ==========
 
     protected void play0(boolean fireEvent)
     {
-        if (state == State.PLAYING)
-            return;
+        while (true)
+        {
+            Playback current = playback.get();
+            switch (current.state)
+            {
+                case PLAYING:
+                    return;
+                case PAUSED:
+                    if (transition(current, new Playback(State.PLAYING, current.track, current.previous)))
+                        return;
+                    break;
+                case LOADING:
+                    if (current.autoPlay || transition(current, new Playback(State.LOADING, null, current.previous, current.load, true)))
+                        return;
+                    break;
+                case STOPPED:
+                    if (audioQueue.isEmpty())
+                        throw new IllegalStateException("MusicPlayer: The audio queue is empty! Cannot start playing.");
 
-        if (currentAudioSource != null)
+                    Playback loading = beginLoading(current, true);
+                    if (loading == null)
+                        break;
+                    AudioSource source = audioQueue.pollFirst();
+                    if (source != null)
+                        load(loading, () -> open(source, null, 0));
+                    else
+                        finishLoading(loading, null);
+                    //TODO: fire onPlaying
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Stops the player, unless it already left the given playback.
+     *
+     * @return false if the player left the given playback in the meantime.
+     */
+    protected boolean stop0(Playback expected, boolean fireEvent)
+    {
+        if (expected.state == State.STOPPED)
+            return true;
+
+        return transition(expected, new Playback(State.STOPPED, null, expected.getLeaving()));
+        //TODO: fire onStop
+    }
+
+    protected void reload0(boolean autoPlay, boolean fireEvent)
+    {
+        Playback current;
+        do
         {
-            state = State.PLAYING;
-            return;
+            current = playback.get();
+            if (current.getLeaving() == null)
+                throw new IllegalStateException("Cannot restart or reload a player that has never been started!");
         }
+        while (!reload0(current, autoPlay));
 
-        if (audioQueue.isEmpty())
-            throw new IllegalStateException("MusicPlayer: The audio queue is empty! Cannot start playing.");
+        //TODO: fire onReload
+    }
+
+    /**
+     * Opens the current track, or the previous one if stopped, from the start again.
+     *
+     * @return false if the player left the given playback in the meantime.
+     */
+    protected boolean reload0(Playback expected, boolean autoPlay)
+    {
+        AudioSource source = expected.getLeaving();
+        Playback loading = beginLoading(expected, autoPlay);
+        if (loading == null)
+            return false;
+
+        load(loading, () -> open(source, null, 0));
+        return true;
+    }
+
+    /**
+     * Moves on to the next track of the queue, or stops if it is empty.
+     *
+     * @return false if the player left the given playback in the meantime.
+     */
+    protected boolean playNext(Playback expected, boolean fireEvent)
+    {
+        Playback loading = beginLoading(expected, true);
+        if (loading == null)
+            return false;
+
+        PreloadedTrack preload = takePreload();
+        if (preload != null && isPreloadValid(preload) && audioQueue.remove(preload.getEntry()))
+        {
+            //Opened and buffered in the background already, so it takes over without a gap.
+            if (preload.isDone() && preload.await()
+                    && (preload.getFrameBuffer() == null || preload.getFrameBuffer().getFillLevel() > 0))
+                finishLoading(loading, open(preload));
+            else
+                load(loading, () -> open(preload));
+        }
+        else
+        {
+            if (preload != null)
+                LOADER.execute(preload::discard);
+
+            AudioSource source = shuffle ? audioQueue.pollRandom(new Random()) : audioQueue.pollFirst();
+            if (source != null)
+                load(loading, () -> open(source, null, 0));
+            else
+                finishLoading(loading, null);   //The queue is empty, so the player stops
+        }
+        //TODO: fire onNext or onFinish
+        return true;
+    }
+
+    /**
+     * Leaves the given playback for a new {@link State#LOADING} one, which the caller then completes with
+     * {@link #load(Playback, Supplier)} or {@link #finishLoading(Playback, Track)}.
+     *
+     * @return the loading playback, or null if the player left the given playback in the meantime.
+     */
+    protected Playback beginLoading(Playback expected, boolean autoPlay)
+    {
+        Playback loading = new Playback(State.LOADING, null, expected.getLeaving(), new CompletableFuture<>(), autoPlay);
+        return transition(expected, loading) ? loading : null;
+    }
+
+    /**
+     * Opens the track of the loading playback on the {@link #LOADER}, and publishes it once its first frame is ready.
+     */
+    protected void load(Playback loading, Supplier<Track> opener)
+    {
+        CompletableFuture<Track> load = loading.load;
+        load.thenAccept(track -> finishLoading(loading, track));
+        LOADER.execute(() ->
+        {
+            if (load.isDone())
+                return;     //Cancelled before it even started
+
+            Track track = null;
+            try
+            {
+                track = opener.get();
+            }
+            catch (RuntimeException e)
+            {
+                SimpleLog.getLog("JDA-Player").log(e);
+            }
+
+            boolean wanted = track == null || awaitFirstFrame(track, load);
+            if (!(wanted && load.complete(track)) && track != null)
+                close(track);
+        });
+    }
+
+    /**
+     * Publishes the track opened for the loading playback, or stops if there is none. Pausing and resuming while the
+     * track was opened is taken into account.
+     */
+    protected void finishLoading(Playback loading, Track track)
+    {
+        Playback current = loading;
+        while (true)
+        {
+            Playback next = track == null
+                    ? new Playback(State.STOPPED, null, current.previous)
+                    : new Playback(current.autoPlay ? State.PLAYING : State.PAUSED, track, current.previous);
+            if (transition(current, next))
+                return;
+
+            current = playback.get();
+            //Either paused or resumed meanwhile, which keeps the load, or replaced by a newer skip or stop.
+            if (current.load != loading.load)
+                break;
+        }
+
+        //Another skip or stop won, so this track is not needed anymore.
+        if (track != null)
+            close(track);
+    }
+
+    /**
+     * Replaces the playback and closes the track it leaves behind.
+     *
+     * @return false if the playback was not the expected one anymore.
+     */
+    protected boolean transition(Playback expected, Playback next)
+    {
+        if (!playback.compareAndSet(expected, next))
+            return false;
+        if (expected.track != null && expected.track != next.track && expected.track != next.fadeOut)
+            close(expected.track);
+        if (expected.fadeOut != null && expected.fadeOut != next.fadeOut)
+            close(expected.fadeOut);
+        if (expected.load != null && expected.load != next.load)
+            expected.load.cancel(false);
+        return true;
+    }
+
+    /**
+     * Replaces the track with the seeked one, as long as the same source is still playing.
+     *
+     * @return false if the seek was cancelled or the track changed meanwhile.
+     */
+    protected boolean publishSeek(Track seeked, Future<?> seek)
+    {
+        while (!seek.isDone())
+        {
+            Playback current = playback.get();
+            //Nothing to seek in anymore
+            if (current.track == null || current.track.source != seeked.source)
+                return false;
+            if (transition(current, new Playback(current.state, seeked, current.previous)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Waits until the track can hand out its first frame right away, or until the load is cancelled.
+     *
+     * @return false if the load was cancelled meanwhile.
+     */
+    protected boolean awaitFirstFrame(Track track, Future<?> load)
+    {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FIRST_FRAME_TIMEOUT);
+        AudioFrameBuffer frameBuffer = track.frameBuffer;
+        if (frameBuffer != null)
+        {
+            while (!load.isDone() && frameBuffer.getFillLevel() == 0 && !frameBuffer.isFinished() && System.nanoTime() < deadline)
+                frameBuffer.awaitFrame(20, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            byte[] frame = new byte[FRAME_SIZE];
+            try
+            {
+                if (track.stream.readFrame(frame, deadline) > 0)
+                    track.firstFrame = frame;
+            }
+            catch (IOException e)
+            {
+                SimpleLog.getLog("JDA-Player").log(e);
+            }
+        }
+        return !load.isDone();
+    }
+
+    protected Track open(PreloadedTrack preload)
+    {
+        if (preload.await())
+        {
+            return resolveInfo(new Track(preload.getSource(), preload.getStream(), preload.getFrameBuffer(), 0, 0));
+        }
+
+        preload.discard();
+        return open(preload.getSource(), null, 0);
+    }
+
+    protected Track open(AudioSource source, AudioTimestamp position, long seekStarted)
+    {
+        AudioStream stream = PcmCache.open(source, position);
+        if (stream == null)
+            return null;
+
+        AudioFrameBuffer frameBuffer = null;
+        int bufferDepth = this.bufferDepth;
+        if (bufferDepth > 0)
+        {
+            frameBuffer = new AudioFrameBuffer(stream, bufferDepth);
+            frameBuffer.start();
+        }
 
-        loadFromSource(audioQueue.removeFirst());
+        return resolveInfo(new Track(source, stream, frameBuffer, position != null ? position.getTotalMilliseconds() : 0, seekStarted));
+    }
+
+    /**
+     * Looks up the info of a track that is about to play. Preloading and crossfading need its duration, loudness
+     * normalization the loudness it was measured at before.
+     *
+     * @return the track.
+     */
+    protected Track resolveInfo(Track track)
+    {
+        if (!loudnessNormalization && preloadTime + crossfadeTime <= 0)
+            return track;
+
+        //getInfo() may have to run youtube-dl, so the info is resolved on the loader.
+        LOADER.execute(() ->
+        {
+            AudioInfo info = track.source.getInfo();
+            if (info == null)
+                return;
+            track.info = info;
+            if (info.getDuration() != null && getDuration(track.source) < 0)
+                duration = new TrackDuration(track.source, info.getDuration().getTotalSeconds() * 1000L);
+        });
+        return track;
+    }
 
-        state = State.PLAYING;
-        //TODO: fire onPlaying
+    /**
+     * @return the duration of the source in ms, or -1 if it is not the one whose duration was resolved last.
+     */
+    protected long getDuration(AudioSource source)
+    {
+        TrackDuration duration = this.duration;
+        return duration != null && duration.source == source ? duration.millis : -1;
     }
 
-    protected void stop0(boolean fireEvent)
+    /**
+     * Stops filling the track's frame buffer right away, and closes its stream on the {@link #LOADER}. Closing may wait
+     * for the stream's processes to exit, which the audio send thread, where most tracks end, must not.
+     */
+    protected void close(Track track)
     {
-        if (state == State.STOPPED)
+        if (track.frameBuffer != null)
+            track.frameBuffer.close();
+        LOADER.execute(() ->
+        {
+            paddedFrames.addAndGet(track.stream.getPaddedFrames());
+            try
+            {
+                track.stream.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Starts opening the next track once the current one is within {@link #preloadTime}, plus the
+     * {@link #crossfadeTime}, of its end. A preload the queue does not agree with anymore is closed right away, instead
+     * of holding its processes and buffers until the current track ends.
+     */
+    protected void checkPreload(Track track)
+    {
+        PreloadedTrack preloaded = preloadedTrack.get();
+        if (preloaded != null)
+        {
+            if (isPreloadValid(preloaded) || !preloadedTrack.compareAndSet(preloaded, null))
+                return;
+            //Closing the stream may wait for its processes, which the audio send thread must not.
+            LOADER.execute(preloaded::discard);
+        }
+
+        long lead = preloadTime + crossfadeTime;
+        if (lead <= 0 || repeat || audioQueue.isEmpty())
+            return;
+
+        long duration = getDuration(track.source);
+        if (duration < 0)
+            return;
+
+        //The track is played faster or slower than real time if the speed is changed.
+        long remaining = duration - track.getPosition();
+        if (remaining > lead * timeScaler.getTempo() * timeScaler.getRate())
+            return;
+
+        AudioQueue.Entry next = shuffle ? audioQueue.peekRandomEntry(new Random()) : audioQueue.peekFirstEntry();
+        if (next == null)
+            return;
+        PreloadedTrack preload = new PreloadedTrack(next, bufferDepth, LOADER);
+        if (!preloadedTrack.compareAndSet(null, preload))
+            LOADER.execute(preload::discard);
+    }
+
+    /**
+     * Starts fading over to the preloaded track once the current one is within {@link #crossfadeTime} of its end. If
+     * the preload is not ready by then, the tracks change with a cut at the end as usual.
+     */
+    protected void checkCrossfade(Playback current)
+    {
+        Track outgoing = current.track;
+        long duration = getDuration(outgoing.source);
+        if (repeat || duration < 0)
+            return;
+        //The time left in the track passes faster or slower if the speed is changed.
+        double speed = timeScaler.getTempo() * timeScaler.getRate();
+        long remaining = (long) ((duration - outgoing.getPosition()) / speed);
+        if (remaining > crossfadeTime || remaining < 40)
+            return;
+
+        PreloadedTrack preload = preloadedTrack.get();
+        if (preload == null || !preload.isDone() || !preload.await()
+                || preload.getFrameBuffer() != null && preload.getFrameBuffer().getFillLevel() == 0)
+            return;
+        //Only checked against the queue once it is ready to take over. A preload the queue does not agree with anymore
+        // is dropped, so the next frames do not check it again.
+        if (!preloadedTrack.compareAndSet(preload, null))
+            return;
+        if (!isPreloadValid(preload) || !audioQueue.remove(preload.getEntry()))
+        {
+            LOADER.execute(preload::discard);
+            return;
+        }
+
+        Track incoming = new Track(preload.getSource(), preload.getStream(), preload.getFrameBuffer(), 0, 0);
+        if (!transition(current, new Playback(State.PLAYING, incoming, outgoing.source, null, false, outgoing)))
+        {
+            //A command got there first, the track stays queued.
+            audioQueue.add(0, incoming.source);
+            close(incoming);
             return;
+        }
+        fadeFrame = 0;
+        fadeFrames = (int) (remaining / 20);
+        //The outgoing track keeps its scaler and its gain, while the incoming one gets the other scaler reset for it and
+        // is measured from its first frame.
+        Scaling outgoingScaling = scaling;
+        scaling = fadeScaling;
+        fadeScaling = outgoingScaling;
+        Normalization outgoingNormalization = normalization;
+        normalization = fadeNormalization;
+        fadeNormalization = outgoingNormalization;
+        resolveInfo(incoming);
+        //TODO: fire onNext
+    }
 
-        state = State.STOPPED;
+    /**
+     * Called with the incoming track's frame in {@link #buffer}, blends the outgoing track into it. Both are normalized
+     * on their own before, so neither measurement hears the other track. Ends the fade once it is complete or the
+     * outgoing track ran out.
+     */
+    protected void crossfade(Playback current)
+    {
+        int amountRead;
         try
         {
-            currentAudioStream.close();
+            amountRead = readScaled(fadeScaling, current.fadeOut, fadeBuffer);
         }
         catch (IOException e)
         {
-            e.printStackTrace();
+            amountRead = -1;
         }
-        finally
+        if (amountRead > 0 && loudnessNormalization)
+            normalize(fadeNormalization, current.fadeOut, fadeBuffer);
+
+        //Equal-power curves, the incoming gain rising along a quarter sine while the outgoing one falls along a cosine.
+        double from = Math.PI / 2 * fadeFrame / fadeFrames;
+        double to = Math.PI / 2 * (fadeFrame + 1) / fadeFrames;
+        int inFrom = (int) Math.round(Math.sin(from) * GainStage.UNITY);
+        int inTo = (int) Math.round(Math.sin(to) * GainStage.UNITY);
+        int outFrom = amountRead > 0 ? (int) Math.round(Math.cos(from) * GainStage.UNITY) : 0;
+        int outTo = amountRead > 0 ? (int) Math.round(Math.cos(to) * GainStage.UNITY) : 0;
+        blend(buffer, inFrom, inTo, fadeBuffer, outFrom, outTo);
+
+        if (++fadeFrame >= fadeFrames || amountRead < 0)
         {
-            previousAudioSource = currentAudioSource;
-            currentAudioSource = null;
-            currentAudioStream = null;
+            finishNormalizing(fadeNormalization);
+            transition(current, new Playback(State.PLAYING, current.track, current.previous));
         }
-        //TODO: fire onStop
     }
 
-    protected void reload0(boolean autoPlay, boolean fireEvent)
+    /**
+     * Mixes the other frame into the frame, each ramping linearly from one Q15 gain to another across the frame.
+     */
+    private static void blend(byte[] frame, int fromGain, int toGain, byte[] other, int otherFromGain, int otherToGain)
     {
-        if (previousAudioSource == null && currentAudioSource == null)
-            throw new IllegalStateException("Cannot restart or reload a player that has never been started!");
+        final int pairs = FRAME_SIZE / PCM_FRAME_SIZE;
+        final long step = ((long) (toGain - fromGain) << 16) / pairs;
+        final long otherStep = ((long) (otherToGain - otherFromGain) << 16) / pairs;
+        long gainAcc = (long) fromGain << 16;
+        long otherGainAcc = (long) otherFromGain << 16;
 
-        stop0(false);
-        loadFromSource(previousAudioSource);
+        for (int i = 0; i < FRAME_SIZE; i += PCM_FRAME_SIZE)
+        {
+            gainAcc += step;
+            otherGainAcc += otherStep;
+            final int gain = (int) (gainAcc >> 16);
+            final int otherGain = (int) (otherGainAcc >> 16);
+            blendSample(frame, other, i, gain, otherGain);
+            blendSample(frame, other, i + 2, gain, otherGain);
+        }
+    }
 
-        if (autoPlay)
-            play0(false);
+    private static void blendSample(byte[] frame, byte[] other, int i, int gain, int otherGain)
+    {
+        int sample = (short) ((frame[i] << 8) | (frame[i + 1] & 0xff));
+        int otherSample = (short) ((other[i] << 8) | (other[i + 1] & 0xff));
+        //Both gains together stay below sqrt(2) * UNITY, so this cannot overflow.
+        sample = (sample * gain + otherSample * otherGain + (1 << 14)) >> 15;
+        if (sample > Short.MAX_VALUE)
+            sample = Short.MAX_VALUE;
+        else if (sample < Short.MIN_VALUE)
+            sample = Short.MIN_VALUE;
+        frame[i] = (byte) (sample >> 8);
+        frame[i + 1] = (byte) sample;
+    }
 
-        //TODO: fire onReload
+    /**
+     * A preload is only used if the queue still agrees with it. Skips, shuffles and queue edits in the meantime
+     * may have changed what comes next. In shuffle mode, the preloaded source has to be where it was picked, which
+     * is checked in O(log n) instead of searching the queue for it.
+     */
+    protected boolean isPreloadValid(PreloadedTrack preload)
+    {
+        if (shuffle)
+            return audioQueue.isCurrent(preload.getEntry());
+        return audioQueue.peekFirst() == preload.getSource();
+    }
+
+    protected PreloadedTrack takePreload()
+    {
+        return preloadedTrack.getAndSet(null);
+    }
+
+    protected void discardPreload()
+    {
+        PreloadedTrack preload = takePreload();
+        if (preload != null)
+            LOADER.execute(preload::discard);
     }
 
-    protected void playNext(boolean fireEvent)
+    /**
+     * Fills {@link #buffer} with the next frame of the track.
+     *
+     * @return the amount of bytes read, 0 if no frame is ready yet or -1 if the stream has ended.
+     */
+    protected int readFrame(Track track) throws IOException
     {
-        if (audioQueue.isEmpty())
+        return readFrame(track, buffer);
+    }
+
+    /**
+     * Like {@link #readFrame(Track)}, but through the {@link #timeScaler} once the tempo or rate is changed. That takes
+     * as many frames of the stream as the speed needs.
+     */
+    protected int readScaled(Track track) throws IOException
+    {
+        return readScaled(scaling, track, buffer);
+    }
+
+    /**
+     * Fills the buffer with the next frame of the track, through the scaling's scaler once the speed is changed. A
+     * scaling that was engaged for another track is reset for this one.
+     */
+    protected int readScaled(Scaling scaling, Track track, byte[] buffer) throws IOException
+    {
+        TimeScaler scaler = scaling.scaler;
+        if (scaling.track != track)
         {
-            stop0(false);   //Maybe true?
-            //TODO: fire onFinish
-            return;
+            scaling.track = null;
+            if (scaler.isNeutral())
+                return readFrame(track, buffer);
+            scaler.reset();
+            scaling.track = track;
         }
 
-        stop0(false);
-        AudioSource source;
-        if (shuffle)
+        while (!scaler.pull(buffer))
         {
-            Random rand = new Random();
-            source = audioQueue.remove(rand.nextInt(audioQueue.size()));
+            //What is left in the scaler when the stream ends is less than a frame, which is dropped.
+            int amountRead = readFrame(track, scalerInput);
+            if (amountRead <= 0)
+                return amountRead;
+            scaler.push(scalerInput, 0, amountRead);
         }
+        return buffer.length;
+    }
+
+    protected int readFrame(Track track, byte[] buffer) throws IOException
+    {
+        byte[] firstFrame = track.firstFrame;
+        if (firstFrame != null)
+        {
+            track.firstFrame = null;
+            System.arraycopy(firstFrame, 0, buffer, 0, buffer.length);
+            return buffer.length;
+        }
+
+        if (track.frameBuffer != null)
+        {
+            if (track.frameBuffer.poll(buffer))
+                return buffer.length;
+            return track.frameBuffer.isFinished() ? -1 : 0;
+        }
+
+        return track.stream.readFrame(buffer, System.nanoTime() + readDeadline);
+    }
+
+    private void provided(Track track)
+    {
+        //A track opened from its start, and not by a seek, counts as played once its first frame is heard.
+        if (track.microsProvided == 0 && track.positionOffset == 0 && track.seekStarted == 0
+                && JDAPlayerConfig.getPCM_CACHE() != null)
+            LOADER.execute(() -> PcmCache.played(track.source));
+        filters.process(buffer, 0, buffer.length);
+        gainStage.process(buffer, 0, buffer.length);
+        if (scaling.track == track)
+            track.microsProvided += Math.round(scaling.scaler.getLastFrameInput() * 1000 / 48);
         else
-            source = audioQueue.removeFirst();
-        loadFromSource(source);
+            track.microsProvided += 20000;
+        long seekStarted = track.seekStarted;
+        if (seekStarted != 0)
+        {
+            lastSeekLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seekStarted);
+            track.seekStarted = 0;
+        }
+    }
 
-        play0(false);
-        //TODO: fire onNext
+    /**
+     * Measures the frame and brings it to the target loudness. The measurement continues across seeks, and is stored
+     * once the source changes.
+     */
+    private void normalize(Normalization normalization, Track track, byte[] frame)
+    {
+        LoudnessNormalizer normalizer = normalization.normalizer;
+        AudioInfo info = track.info;
+        if (normalization.source != track.source)
+        {
+            finishNormalizing(normalization);
+            normalization.source = track.source;
+            normalizer.reset(info != null ? info.getLoudness() : Double.NaN);
+        }
+        else if (info != null && !normalizer.isLoudnessKnown())
+            normalizer.setKnownLoudness(info.getLoudness());
+        if (info != null)
+            normalization.info = info;
+        normalizer.process(frame, 0, frame.length);
     }
 
-    protected void loadFromSource(AudioSource source)
+    /**
+     * Stores the loudness of the source that was measured, if enough of it was played for the measurement to hold.
+     */
+    private void finishNormalizing(Normalization normalization)
     {
-        AudioStream stream = source.asStream();
-        currentAudioSource = source;
-        currentAudioStream = stream;
+        AudioSource source = normalization.source;
+        AudioInfo info = normalization.info;
+        normalization.source = null;
+        normalization.info = null;
+
+        AudioInfoCache cache = JDAPlayerConfig.getINFO_CACHE();
+        if (source == null || info == null || cache == null
+                || normalization.normalizer.getMeasuredTime() < MIN_STORED_LOUDNESS_TIME)
+            return;
+        double loudness = normalization.normalizer.getMeasuredLoudness();
+        if (!Double.isNaN(loudness))
+            LOADER.execute(() -> cache.storeLoudness(source.getSource(), info, loudness));
     }
 }
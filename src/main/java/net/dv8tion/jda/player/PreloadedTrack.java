@@ -0,0 +1,172 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.AudioStream;
+import net.dv8tion.jda.player.source.PcmCache;
+import net.dv8tion.jda.utils.SimpleLog;
+
+/**
+ * The next track of a {@link MusicPlayer}, whose stream is opened in the background while the current track is still
+ * playing, so that the switch to it does not have to wait for youtube-dl and ffmpeg to start.
+ */
+public class PreloadedTrack
+{
+    private final AudioQueue.Entry entry;
+    private final AudioSource source;
+    private final FutureTask<Void> task;
+
+    // Guarded by this
+    private AudioStream stream;
+    private AudioFrameBuffer frameBuffer;
+    private boolean discarded = false;
+
+    /**
+     * @param entry
+     *          The source to open, as it was peeked from the queue.
+     */
+    public PreloadedTrack(final AudioQueue.Entry entry, final int bufferDepth, Executor executor)
+    {
+        this.entry = entry;
+        this.source = entry.getSource();
+        this.task = new FutureTask<>(() -> open(bufferDepth), null);
+        executor.execute(task);
+    }
+
+    public AudioQueue.Entry getEntry()
+    {
+        return entry;
+    }
+
+    public AudioSource getSource()
+    {
+        return source;
+    }
+
+    /**
+     * @return true once the background open finished, so {@link #await()} returns right away.
+     */
+    public boolean isDone()
+    {
+        return task.isDone();
+    }
+
+    /**
+     * Waits for the stream to be opened.
+     *
+     * @return true if the stream is open and ready to be played.
+     */
+    public boolean await()
+    {
+        try
+        {
+            task.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch (CancellationException e)
+        {
+            return false;
+        }
+        catch (ExecutionException e)
+        {
+            SimpleLog.getLog("JDA-Player").log(e.getCause());
+            return false;
+        }
+
+        synchronized (this)
+        {
+            return !discarded && stream != null;
+        }
+    }
+
+    public synchronized AudioStream getStream()
+    {
+        return stream;
+    }
+
+    public synchronized AudioFrameBuffer getFrameBuffer()
+    {
+        return frameBuffer;
+    }
+
+    /**
+     * Closes the stream, or makes sure it is closed as soon as the background open finishes.
+     */
+    public void discard()
+    {
+        AudioStream stream;
+        AudioFrameBuffer frameBuffer;
+        synchronized (this)
+        {
+            discarded = true;
+            stream = this.stream;
+            frameBuffer = this.frameBuffer;
+            this.stream = null;
+            this.frameBuffer = null;
+        }
+        task.cancel(false);
+        close(stream, frameBuffer);
+    }
+
+    private void open(int bufferDepth)
+    {
+        AudioStream stream = PcmCache.open(source, null);
+        if (stream == null)
+            return;
+
+        AudioFrameBuffer frameBuffer = bufferDepth > 0 ? new AudioFrameBuffer(stream, bufferDepth) : null;
+        synchronized (this)
+        {
+            if (!discarded)
+            {
+                this.stream = stream;
+                this.frameBuffer = frameBuffer;
+                if (frameBuffer != null)
+                    frameBuffer.start();
+                return;
+            }
+        }
+        close(stream, frameBuffer);
+    }
+
+    private static void close(AudioStream stream, AudioFrameBuffer frameBuffer)
+    {
+        if (frameBuffer != null)
+            frameBuffer.close();
+        if (stream != null)
+        {
+            try
+            {
+                stream.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+/**
+ * An effect in a {@link FilterChain}. Filters work on interleaved stereo samples scaled to [-1, 1], which the chain
+ * converts each frame from and to PCM once for all of its filters.
+ * <p>
+ * {@link #process(float[], int)} is only ever called from the audio send thread and must not allocate. Parameters
+ * may be changed from any thread and take effect with the next frame.
+ */
+public interface AudioFilter
+{
+    int SAMPLE_RATE = 48000;
+    int CHANNELS = 2;
+
+    /**
+     * Filters the samples in place.
+     *
+     * @param pairs
+     *          The amount of stereo sample pairs, half the used length of samples.
+     */
+    void process(float[] samples, int pairs);
+
+    /**
+     * Forgets the audio seen so far, e.g. when the track changes.
+     */
+    void reset();
+}
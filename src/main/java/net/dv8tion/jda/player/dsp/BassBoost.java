@@ -0,0 +1,74 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+/**
+ * Raises everything below a corner frequency with a low shelf. Usually followed by a {@link Limiter}, as a boost
+ * easily pushes loud tracks past full scale.
+ */
+public class BassBoost implements AudioFilter
+{
+    public static final double DEFAULT_FREQUENCY = 120; // Hz
+    public static final double MAX_BOOST = 18; // dB
+
+    private final BiquadFilter shelf;
+
+    /**
+     * @param boost
+     *          The boost in dB, between 0 and {@link #MAX_BOOST}.
+     */
+    public BassBoost(double boost)
+    {
+        shelf = new BiquadFilter(BiquadFilter.Type.LOW_SHELF, DEFAULT_FREQUENCY, Math.sqrt(0.5), clamp(boost));
+    }
+
+    public double getBoost()
+    {
+        return shelf.getGain();
+    }
+
+    public void setBoost(double boost)
+    {
+        shelf.setGain(clamp(boost));
+    }
+
+    public double getFrequency()
+    {
+        return shelf.getFrequency();
+    }
+
+    public void setFrequency(double frequency)
+    {
+        shelf.setFrequency(frequency);
+    }
+
+    @Override
+    public void process(float[] samples, int pairs)
+    {
+        shelf.process(samples, pairs);
+    }
+
+    @Override
+    public void reset()
+    {
+        shelf.reset();
+    }
+
+    private static double clamp(double boost)
+    {
+        return Math.max(0, Math.min(MAX_BOOST, boost));
+    }
+}
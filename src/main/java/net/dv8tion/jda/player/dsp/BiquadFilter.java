@@ -0,0 +1,229 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+/**
+ * A second order IIR filter with the coefficients from Robert Bristow-Johnson's Audio EQ Cookbook, run in transposed
+ * direct form II.
+ * <p>
+ * The parameters are kept together with their coefficients in one immutable {@link Coefficients}, which the audio
+ * thread reads once per frame. A filter whose gain makes it a no-op is skipped entirely.
+ */
+public class BiquadFilter implements AudioFilter
+{
+    //Below this the state is flushed to 0, so silence does not decay into slow denormal arithmetic.
+    private static final double DENORMAL = 1e-15;
+
+    public enum Type
+    {
+        PEAKING, LOW_SHELF, HIGH_SHELF, LOW_PASS, HIGH_PASS;
+    }
+
+    private volatile Coefficients coefficients;
+
+    //Only touched by the audio send thread.
+    double leftZ1, leftZ2, rightZ1, rightZ2;
+
+    /**
+     * @param frequency
+     *          The center, corner or cutoff frequency in Hz.
+     * @param q
+     *          The quality, 1/sqrt(2) for a Butterworth response.
+     * @param gain
+     *          The gain in dB, ignored by the pass filters.
+     */
+    public BiquadFilter(Type type, double frequency, double q, double gain)
+    {
+        coefficients = new Coefficients(type, frequency, q, gain);
+    }
+
+    public Type getType()
+    {
+        return coefficients.type;
+    }
+
+    public double getFrequency()
+    {
+        return coefficients.frequency;
+    }
+
+    public double getQ()
+    {
+        return coefficients.q;
+    }
+
+    public double getGain()
+    {
+        return coefficients.gain;
+    }
+
+    public synchronized void setParameters(Type type, double frequency, double q, double gain)
+    {
+        coefficients = new Coefficients(type, frequency, q, gain);
+    }
+
+    public synchronized void setGain(double gain)
+    {
+        Coefficients c = coefficients;
+        coefficients = new Coefficients(c.type, c.frequency, c.q, gain);
+    }
+
+    public synchronized void setFrequency(double frequency)
+    {
+        Coefficients c = coefficients;
+        coefficients = new Coefficients(c.type, frequency, c.q, c.gain);
+    }
+
+    /**
+     * @return true if the filter currently leaves the audio untouched.
+     */
+    public boolean isBypassed()
+    {
+        return coefficients.bypass;
+    }
+
+    Coefficients getCoefficients()
+    {
+        return coefficients;
+    }
+
+    @Override
+    public void process(float[] samples, int pairs)
+    {
+        final Coefficients c = coefficients;
+        if (c.bypass)
+            return;
+
+        final double b0 = c.b0, b1 = c.b1, b2 = c.b2, a1 = c.a1, a2 = c.a2;
+        double lz1 = leftZ1, lz2 = leftZ2, rz1 = rightZ1, rz2 = rightZ2;
+        final int end = pairs * CHANNELS;
+        for (int i = 0; i < end; i += CHANNELS)
+        {
+            double in = samples[i];
+            double out = b0 * in + lz1;
+            lz1 = b1 * in - a1 * out + lz2;
+            lz2 = b2 * in - a2 * out;
+            samples[i] = (float) out;
+
+            in = samples[i + 1];
+            out = b0 * in + rz1;
+            rz1 = b1 * in - a1 * out + rz2;
+            rz2 = b2 * in - a2 * out;
+            samples[i + 1] = (float) out;
+        }
+        leftZ1 = flush(lz1);
+        leftZ2 = flush(lz2);
+        rightZ1 = flush(rz1);
+        rightZ2 = flush(rz2);
+    }
+
+    @Override
+    public void reset()
+    {
+        leftZ1 = leftZ2 = rightZ1 = rightZ2 = 0;
+    }
+
+    static double flush(double z)
+    {
+        return Math.abs(z) < DENORMAL ? 0 : z;
+    }
+
+    protected static final class Coefficients
+    {
+        protected final Type type;
+        protected final double frequency;
+        protected final double q;
+        protected final double gain;
+        protected final boolean bypass;
+        //Normalized by a0
+        protected final double b0, b1, b2, a1, a2;
+
+        protected Coefficients(Type type, double frequency, double q, double gain)
+        {
+            if (type == null)
+                throw new NullPointerException("Provided type was null!");
+            if (!(frequency > 0 && frequency < SAMPLE_RATE / 2))
+                throw new IllegalArgumentException("Frequency must be between 0 and " + SAMPLE_RATE / 2 + "Hz!");
+            if (!(q > 0))
+                throw new IllegalArgumentException("Q must be positive!");
+
+            this.type = type;
+            this.frequency = frequency;
+            this.q = q;
+            this.gain = gain;
+
+            double a = Math.pow(10, gain / 40);
+            double w0 = 2 * Math.PI * frequency / SAMPLE_RATE;
+            double cos = Math.cos(w0);
+            double alpha = Math.sin(w0) / (2 * q);
+            double sqrtA2Alpha = 2 * Math.sqrt(a) * alpha;
+
+            double b0, b1, b2, a0, a1, a2;
+            switch (type)
+            {
+                case PEAKING:
+                    b0 = 1 + alpha * a;
+                    b1 = -2 * cos;
+                    b2 = 1 - alpha * a;
+                    a0 = 1 + alpha / a;
+                    a1 = -2 * cos;
+                    a2 = 1 - alpha / a;
+                    break;
+                case LOW_SHELF:
+                    b0 = a * ((a + 1) - (a - 1) * cos + sqrtA2Alpha);
+                    b1 = 2 * a * ((a - 1) - (a + 1) * cos);
+                    b2 = a * ((a + 1) - (a - 1) * cos - sqrtA2Alpha);
+                    a0 = (a + 1) + (a - 1) * cos + sqrtA2Alpha;
+                    a1 = -2 * ((a - 1) + (a + 1) * cos);
+                    a2 = (a + 1) + (a - 1) * cos - sqrtA2Alpha;
+                    break;
+                case HIGH_SHELF:
+                    b0 = a * ((a + 1) + (a - 1) * cos + sqrtA2Alpha);
+                    b1 = -2 * a * ((a - 1) + (a + 1) * cos);
+                    b2 = a * ((a + 1) + (a - 1) * cos - sqrtA2Alpha);
+                    a0 = (a + 1) - (a - 1) * cos + sqrtA2Alpha;
+                    a1 = 2 * ((a - 1) - (a + 1) * cos);
+                    a2 = (a + 1) - (a - 1) * cos - sqrtA2Alpha;
+                    break;
+                case LOW_PASS:
+                    b0 = (1 - cos) / 2;
+                    b1 = 1 - cos;
+                    b2 = (1 - cos) / 2;
+                    a0 = 1 + alpha;
+                    a1 = -2 * cos;
+                    a2 = 1 - alpha;
+                    break;
+                case HIGH_PASS:
+                    b0 = (1 + cos) / 2;
+                    b1 = -(1 + cos);
+                    b2 = (1 + cos) / 2;
+                    a0 = 1 + alpha;
+                    a1 = -2 * cos;
+                    a2 = 1 - alpha;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown filter type " + type);
+            }
+
+            this.b0 = b0 / a0;
+            this.b1 = b1 / a0;
+            this.b2 = b2 / a0;
+            this.a1 = a1 / a0;
+            this.a2 = a2 / a0;
+            this.bypass = gain == 0 && (type == Type.PEAKING || type == Type.LOW_SHELF || type == Type.HIGH_SHELF);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+/**
+ * A graphic equalizer, one peaking {@link BiquadFilter} per band. Bands at 0dB cost nothing.
+ * <p>
+ * Rather than running the bands one after another over the whole frame, every sample goes through all active bands
+ * before the next one. Each band's recursion has to wait for its previous output, so this lets the CPU work on
+ * several bands at once instead of stalling on one.
+ */
+public class Equalizer implements AudioFilter
+{
+    //The ten octave bands of ISO 266, in Hz.
+    public static final double[] OCTAVE_BANDS = { 31.25, 62.5, 125, 250, 500, 1000, 2000, 4000, 8000, 16000 };
+    public static final double MAX_GAIN = 12; // dB
+
+    private final double[] frequencies;
+    private final BiquadFilter[] bands;
+
+    //Only touched by the audio send thread. The coefficients and state of the active bands, 5 and 4 per band.
+    private final BiquadFilter[] active;
+    private final double[] coefficients;
+    private final double[] state;
+
+    public Equalizer()
+    {
+        this(OCTAVE_BANDS, Math.sqrt(2));
+    }
+
+    /**
+     * @param q
+     *          The quality of every band, sqrt(2) for bands an octave apart.
+     */
+    public Equalizer(double[] frequencies, double q)
+    {
+        this.frequencies = frequencies.clone();
+        this.bands = new BiquadFilter[frequencies.length];
+        for (int i = 0; i < bands.length; i++)
+            bands[i] = new BiquadFilter(BiquadFilter.Type.PEAKING, frequencies[i], q, 0);
+        this.active = new BiquadFilter[bands.length];
+        this.coefficients = new double[bands.length * 5];
+        this.state = new double[bands.length * 4];
+    }
+
+    public int getBandCount()
+    {
+        return bands.length;
+    }
+
+    public double getFrequency(int band)
+    {
+        return frequencies[band];
+    }
+
+    public double getGain(int band)
+    {
+        return bands[band].getGain();
+    }
+
+    /**
+     * @param gain
+     *          The gain of the band in dB, limited to plus or minus {@link #MAX_GAIN}.
+     */
+    public void setGain(int band, double gain)
+    {
+        bands[band].setGain(Math.max(-MAX_GAIN, Math.min(MAX_GAIN, gain)));
+    }
+
+    public void resetGains()
+    {
+        for (BiquadFilter band : bands)
+            band.setGain(0);
+    }
+
+    @Override
+    public void process(float[] samples, int pairs)
+    {
+        int count = 0;
+        for (BiquadFilter band : bands)
+        {
+            BiquadFilter.Coefficients c = band.getCoefficients();
+            if (c.bypass)
+                continue;
+            active[count] = band;
+            int k = count * 5;
+            coefficients[k] = c.b0;
+            coefficients[k + 1] = c.b1;
+            coefficients[k + 2] = c.b2;
+            coefficients[k + 3] = c.a1;
+            coefficients[k + 4] = c.a2;
+            int z = count * 4;
+            state[z] = band.leftZ1;
+            state[z + 1] = band.leftZ2;
+            state[z + 2] = band.rightZ1;
+            state[z + 3] = band.rightZ2;
+            count++;
+        }
+        if (count == 0)
+            return;
+
+        final double[] coefficients = this.coefficients;
+        final double[] state = this.state;
+        final int end = pairs * CHANNELS;
+        for (int i = 0; i < end; i += CHANNELS)
+        {
+            double left = samples[i];
+            double right = samples[i + 1];
+            for (int b = 0, k = 0, z = 0; b < count; b++, k += 5, z += 4)
+            {
+                final double b0 = coefficients[k], b1 = coefficients[k + 1], b2 = coefficients[k + 2];
+                final double a1 = coefficients[k + 3], a2 = coefficients[k + 4];
+
+                double out = b0 * left + state[z];
+                state[z] = b1 * left - a1 * out + state[z + 1];
+                state[z + 1] = b2 * left - a2 * out;
+                left = out;
+
+                out = b0 * right + state[z + 2];
+                state[z + 2] = b1 * right - a1 * out + state[z + 3];
+                state[z + 3] = b2 * right - a2 * out;
+                right = out;
+            }
+            samples[i] = (float) left;
+            samples[i + 1] = (float) right;
+        }
+
+        for (int b = 0, z = 0; b < count; b++, z += 4)
+        {
+            BiquadFilter band = active[b];
+            band.leftZ1 = BiquadFilter.flush(state[z]);
+            band.leftZ2 = BiquadFilter.flush(state[z + 1]);
+            band.rightZ1 = BiquadFilter.flush(state[z + 2]);
+            band.rightZ2 = BiquadFilter.flush(state[z + 3]);
+        }
+    }
+
+    @Override
+    public void reset()
+    {
+        for (BiquadFilter band : bands)
+            band.reset();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * The effects of one player, applied in order to every 16bit big endian stereo PCM frame it sends.
+ * <p>
+ * The frame is converted to float samples once, run through every {@link AudioFilter}, and converted back with
+ * saturation. All buffers are allocated up front. Filters can be added and removed from any thread; the chain is a
+ * copy-on-write array that the audio thread reads once per frame, so a change applies from the next frame on. An
+ * empty chain leaves the frame untouched.
+ */
+public class FilterChain
+{
+    private static final AudioFilter[] NO_FILTERS = new AudioFilter[0];
+    private static final float SCALE = 1F / 32768;
+
+    private final AtomicReference<AudioFilter[]> filters = new AtomicReference<>(NO_FILTERS);
+
+    //Only touched by the audio send thread.
+    private final float[] samples = new float[MusicPlayer.FRAME_SIZE / 2];
+
+    public void add(AudioFilter filter)
+    {
+        if (filter == null)
+            throw new NullPointerException("Provided filter was null!");
+
+        AudioFilter[] current;
+        AudioFilter[] next;
+        do
+        {
+            current = filters.get();
+            next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = filter;
+        }
+        while (!filters.compareAndSet(current, next));
+    }
+
+    /**
+     * @return false if the filter was not part of the chain.
+     */
+    public boolean remove(AudioFilter filter)
+    {
+        AudioFilter[] current;
+        AudioFilter[] next;
+        do
+        {
+            current = filters.get();
+            int index = Arrays.asList(current).indexOf(filter);
+            if (index < 0)
+                return false;
+            next = new AudioFilter[current.length - 1];
+            System.arraycopy(current, 0, next, 0, index);
+            System.arraycopy(current, index + 1, next, index, next.length - index);
+        }
+        while (!filters.compareAndSet(current, next));
+        return true;
+    }
+
+    public void clear()
+    {
+        filters.set(NO_FILTERS);
+    }
+
+    public List<AudioFilter> getFilters()
+    {
+        return Collections.unmodifiableList(Arrays.asList(filters.get()));
+    }
+
+    public boolean isEmpty()
+    {
+        return filters.get().length == 0;
+    }
+
+    /**
+     * Clears the state of every filter, so nothing of the previous track rings into the next.
+     */
+    public void reset()
+    {
+        for (AudioFilter filter : filters.get())
+            filter.reset();
+    }
+
+    /**
+     * Applies every filter to the frame in place. Only called from the audio send thread.
+     */
+    public void process(byte[] frame, int offset, int length)
+    {
+        final AudioFilter[] filters = this.filters.get();
+        if (filters.length == 0)
+            return;
+
+        final int count = Math.min(length / 2, samples.length);
+        for (int s = 0, i = offset; s < count; s++, i += 2)
+            samples[s] = ((short) ((frame[i] << 8) | (frame[i + 1] & 0xff))) * SCALE;
+
+        final int pairs = count / AudioFilter.CHANNELS;
+        for (AudioFilter filter : filters)
+            filter.process(samples, pairs);
+
+        for (int s = 0, i = offset; s < count; s++, i += 2)
+        {
+            int sample = Math.round(samples[s] * 32768);
+            if (sample > Short.MAX_VALUE)
+                sample = Short.MAX_VALUE;
+            else if (sample < Short.MIN_VALUE)
+                sample = Short.MIN_VALUE;
+            frame[i] = (byte) (sample >> 8);
+            frame[i + 1] = (byte) sample;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+import java.util.Arrays;
+
+/**
+ * A look-ahead peak limiter that keeps the output below a ceiling without clipping.
+ * <p>
+ * The audio is delayed by the look-ahead, while the peak of everything inside that window is tracked with a monotonic
+ * queue. That way the gain starts to come down before a peak reaches the output, and recovers over the release time
+ * once it has passed. Both channels share one gain, so the stereo image does not shift. Whatever the smoothed gain
+ * misses is clamped to the ceiling as a last resort.
+ */
+public class Limiter implements AudioFilter
+{
+    public static final double DEFAULT_CEILING = -1; // dBFS
+    public static final int DEFAULT_LOOKAHEAD = 5; // ms
+    public static final int DEFAULT_RELEASE = 60; // ms
+
+    private final int lookahead;
+    private final double attack;
+
+    private volatile float ceiling;
+    private volatile double release;
+
+    //Only touched by the audio send thread.
+    private final float[] delay;
+    private int delayPosition = 0;
+    private final float[] peakValues;
+    private final long[] peakIndices;
+    private int peakHead = 0;
+    private int peakCount = 0;
+    private long index = 0;
+    private double gain = 1;
+
+    public Limiter()
+    {
+        this(DEFAULT_CEILING, DEFAULT_LOOKAHEAD, DEFAULT_RELEASE);
+    }
+
+    /**
+     * @param ceiling
+     *          The highest output level, in dBFS.
+     * @param lookahead
+     *          How far ahead peaks are seen, in ms. This is also the latency the limiter adds.
+     * @param release
+     *          How long the gain takes to recover after a peak, in ms.
+     */
+    public Limiter(double ceiling, int lookahead, int release)
+    {
+        if (lookahead < 1)
+            throw new IllegalArgumentException("Look-ahead must be at least 1ms!");
+
+        this.lookahead = lookahead * SAMPLE_RATE / 1000;
+        //Closes all but e^-4 of the gap to the target gain within the look-ahead.
+        this.attack = 1 - Math.exp(-4.0 / this.lookahead);
+        this.delay = new float[this.lookahead * CHANNELS];
+        this.peakValues = new float[this.lookahead + 1];
+        this.peakIndices = new long[this.lookahead + 1];
+        setCeiling(ceiling);
+        setRelease(release);
+    }
+
+    public double getCeiling()
+    {
+        return 20 * Math.log10(ceiling);
+    }
+
+    public void setCeiling(double ceiling)
+    {
+        if (ceiling > 0)
+            throw new IllegalArgumentException("Ceiling cannot be above 0dBFS!");
+        this.ceiling = (float) Math.pow(10, ceiling / 20);
+    }
+
+    public void setRelease(int release)
+    {
+        if (release < 1)
+            throw new IllegalArgumentException("Release must be at least 1ms!");
+        this.release = 1 - Math.exp(-1.0 / (release * SAMPLE_RATE / 1000.0));
+    }
+
+    /**
+     * @return the gain currently applied, 1 if the limiter is not reducing anything.
+     */
+    public double getCurrentGain()
+    {
+        return gain;
+    }
+
+    @Override
+    public void process(float[] samples, int pairs)
+    {
+        final float ceiling = this.ceiling;
+        final double release = this.release;
+        final int window = peakValues.length;
+        double gain = this.gain;
+
+        final int end = pairs * CHANNELS;
+        for (int i = 0; i < end; i += CHANNELS)
+        {
+            float left = samples[i];
+            float right = samples[i + 1];
+            float peak = Math.max(Math.abs(left), Math.abs(right));
+
+            //Keep the window's peaks in descending order, the oldest one first.
+            if (peakCount > 0 && peakIndices[peakHead] <= index - window)
+            {
+                peakHead = (peakHead + 1) % window;
+                peakCount--;
+            }
+            while (peakCount > 0 && peakValues[(peakHead + peakCount - 1) % window] <= peak)
+                peakCount--;
+            int tail = (peakHead + peakCount) % window;
+            peakValues[tail] = peak;
+            peakIndices[tail] = index;
+            peakCount++;
+            float windowPeak = peakValues[peakHead];
+
+            double target = windowPeak > ceiling ? ceiling / windowPeak : 1;
+            gain += (target - gain) * (target < gain ? attack : release);
+
+            float delayedLeft = delay[delayPosition];
+            float delayedRight = delay[delayPosition + 1];
+            delay[delayPosition] = left;
+            delay[delayPosition + 1] = right;
+            delayPosition += CHANNELS;
+            if (delayPosition == delay.length)
+                delayPosition = 0;
+
+            samples[i] = clamp((float) (delayedLeft * gain), ceiling);
+            samples[i + 1] = clamp((float) (delayedRight * gain), ceiling);
+            index++;
+        }
+        this.gain = gain;
+    }
+
+    @Override
+    public void reset()
+    {
+        Arrays.fill(delay, 0);
+        delayPosition = 0;
+        peakHead = 0;
+        peakCount = 0;
+        gain = 1;
+    }
+
+    private static float clamp(float sample, float ceiling)
+    {
+        if (sample > ceiling)
+            return ceiling;
+        if (sample < -ceiling)
+            return -ceiling;
+        return sample;
+    }
+}
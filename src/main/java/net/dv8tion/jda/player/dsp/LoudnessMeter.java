@@ -0,0 +1,165 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+import java.util.Arrays;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Measures the integrated loudness of 16bit big endian stereo PCM as ITU-R BS.1770 / EBU R128 define it, frame by
+ * frame as it is played.
+ * <p>
+ * The audio is K-weighted and its energy summed in 100ms steps, which make up the overlapping 400ms gating blocks.
+ * Instead of keeping every block, their energies are collected in a histogram of 0.1 LU bins, so the gated integrated
+ * loudness can be read at any time in constant time and memory, however long the track is. The histogram makes the
+ * relative gate accurate to 0.1 LU.
+ */
+public class LoudnessMeter
+{
+    public static final double ABSOLUTE_GATE = -70; // LUFS
+    private static final double RELATIVE_GATE = -10; // LU
+    private static final double HISTOGRAM_MAX = 5; // LUFS, louder blocks share the top bin
+    private static final double BIN_WIDTH = 0.1; // LU
+    private static final int BINS = (int) Math.round((HISTOGRAM_MAX - ABSOLUTE_GATE) / BIN_WIDTH);
+    private static final int STEP = AudioFilter.SAMPLE_RATE / 10; // pairs, 100ms
+    private static final int STEPS_PER_BLOCK = 4;
+    private static final float SCALE = 1F / 32768;
+
+    //The K-weighting filters at 48kHz, from BS.1770: a high shelf for the head, then a high pass.
+    private static final double SHELF_B0 = 1.53512485958697, SHELF_B1 = -2.69169618940638, SHELF_B2 = 1.19839281085285;
+    private static final double SHELF_A1 = -1.69065929318241, SHELF_A2 = 0.73248077421585;
+    private static final double PASS_A1 = -1.99004745483398, PASS_A2 = 0.99007225036621;
+
+    private final long[] binCounts = new long[BINS];
+    private final double[] binEnergies = new double[BINS];
+    private final double[] steps = new double[STEPS_PER_BLOCK];
+    private long stepCount;
+    private double stepEnergy;
+    private int stepFill;
+    private long pairs;
+
+    //Filter states, shelf and pass for each channel
+    private double ls1, ls2, lp1, lp2, rs1, rs2, rp1, rp2;
+
+    public void add(byte[] frame, int offset, int length)
+    {
+        final int end = offset + length / MusicPlayer.PCM_FRAME_SIZE * MusicPlayer.PCM_FRAME_SIZE;
+        for (int i = offset; i < end; i += MusicPlayer.PCM_FRAME_SIZE)
+        {
+            double left = kWeightLeft(((short) ((frame[i] << 8) | (frame[i + 1] & 0xff))) * SCALE);
+            double right = kWeightRight(((short) ((frame[i + 2] << 8) | (frame[i + 3] & 0xff))) * SCALE);
+            stepEnergy += left * left + right * right;
+            if (++stepFill == STEP)
+                completeStep();
+        }
+        pairs += (end - offset) / MusicPlayer.PCM_FRAME_SIZE;
+    }
+
+    private double kWeightLeft(double in)
+    {
+        double shelf = SHELF_B0 * in + ls1;
+        ls1 = SHELF_B1 * in - SHELF_A1 * shelf + ls2;
+        ls2 = SHELF_B2 * in - SHELF_A2 * shelf;
+        double pass = shelf + lp1;
+        lp1 = -2 * shelf - PASS_A1 * pass + lp2;
+        lp2 = shelf - PASS_A2 * pass;
+        return pass;
+    }
+
+    private double kWeightRight(double in)
+    {
+        double shelf = SHELF_B0 * in + rs1;
+        rs1 = SHELF_B1 * in - SHELF_A1 * shelf + rs2;
+        rs2 = SHELF_B2 * in - SHELF_A2 * shelf;
+        double pass = shelf + rp1;
+        rp1 = -2 * shelf - PASS_A1 * pass + rp2;
+        rp2 = shelf - PASS_A2 * pass;
+        return pass;
+    }
+
+    private void completeStep()
+    {
+        steps[(int) (stepCount++ % STEPS_PER_BLOCK)] = stepEnergy / STEP;
+        stepEnergy = 0;
+        stepFill = 0;
+        if (stepCount < STEPS_PER_BLOCK)
+            return;
+
+        double energy = 0;
+        for (double step : steps)
+            energy += step;
+        energy /= STEPS_PER_BLOCK;
+
+        double loudness = toLoudness(energy);
+        if (loudness < ABSOLUTE_GATE)
+            return;
+        int bin = Math.min(BINS - 1, (int) ((loudness - ABSOLUTE_GATE) / BIN_WIDTH));
+        binCounts[bin]++;
+        binEnergies[bin] += energy;
+    }
+
+    /**
+     * @return the gated loudness of everything added so far in LUFS, or NaN if nothing above the absolute gate was.
+     */
+    public double getIntegratedLoudness()
+    {
+        long count = 0;
+        double energy = 0;
+        for (int bin = 0; bin < BINS; bin++)
+        {
+            count += binCounts[bin];
+            energy += binEnergies[bin];
+        }
+        if (count == 0)
+            return Double.NaN;
+
+        double threshold = toLoudness(energy / count) + RELATIVE_GATE;
+        int first = Math.max(0, (int) Math.ceil((threshold - ABSOLUTE_GATE) / BIN_WIDTH));
+        count = 0;
+        energy = 0;
+        for (int bin = first; bin < BINS; bin++)
+        {
+            count += binCounts[bin];
+            energy += binEnergies[bin];
+        }
+        return count == 0 ? Double.NaN : toLoudness(energy / count);
+    }
+
+    /**
+     * @return how much audio was measured, in seconds.
+     */
+    public double getMeasuredTime()
+    {
+        return (double) pairs / AudioFilter.SAMPLE_RATE;
+    }
+
+    public void reset()
+    {
+        Arrays.fill(binCounts, 0);
+        Arrays.fill(binEnergies, 0);
+        stepCount = 0;
+        stepEnergy = 0;
+        stepFill = 0;
+        pairs = 0;
+        ls1 = ls2 = lp1 = lp2 = rs1 = rs2 = rp1 = rp2 = 0;
+    }
+
+    private static double toLoudness(double energy)
+    {
+        return -0.691 + 10 * Math.log10(energy);
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Brings tracks to the same loudness, so their level does not depend on how they were uploaded.
+ * <p>
+ * If the loudness of a track is known from an earlier play, its gain applies from the first frame. Otherwise the
+ * track is measured with a {@link LoudnessMeter} while it plays, and the gain follows the running estimate once a few
+ * seconds have been measured, moving slowly enough not to be heard as a volume change. The measurement of a whole play
+ * can then be stored for the next one.
+ * <p>
+ * A boosted track can peak above full scale, so the gain is applied to floating point samples and a {@link Limiter}
+ * brings those peaks back under its ceiling before the frame is converted back. The limiter keeps running across
+ * tracks, so a gapless transition stays gapless despite its look-ahead.
+ * <p>
+ * Only the audio thread may call anything but {@link #setTarget(double)}.
+ */
+public class LoudnessNormalizer
+{
+    public static final double DEFAULT_TARGET = -14; // LUFS
+    public static final double MAX_BOOST = 6; // dB
+    public static final double MAX_CUT = 20; // dB
+    private static final double MIN_ESTIMATE_TIME = 3; // s
+    private static final int ESTIMATE_INTERVAL = 10; // frames
+    private static final double ESTIMATE_SLEW = 0.05; // dB per frame
+    private static final double KNOWN_SLEW = 0.5; // dB per frame
+    private static final float SCALE = 1F / 32768;
+
+    private volatile double target = DEFAULT_TARGET;
+
+    private final LoudnessMeter meter = new LoudnessMeter();
+    private final Limiter limiter = new Limiter();
+    private final float[] samples = new float[MusicPlayer.FRAME_SIZE / 2];
+    private float volume = 1;
+    private double knownLoudness = Double.NaN;
+    private double desiredGain = 0;
+    private double gain = 0;
+    private int framesSinceEstimate = 0;
+
+    public double getTarget()
+    {
+        return target;
+    }
+
+    /**
+     * @param target
+     *          The loudness tracks are brought to, in LUFS.
+     */
+    public void setTarget(double target)
+    {
+        this.target = target;
+    }
+
+    /**
+     * Starts on a new track.
+     *
+     * @param knownLoudness
+     *          The loudness of the track in LUFS if it is known, NaN if it has to be measured.
+     */
+    public void reset(double knownLoudness)
+    {
+        meter.reset();
+        framesSinceEstimate = 0;
+        this.knownLoudness = Double.NaN;
+        desiredGain = 0;
+        gain = 0;
+        setKnownLoudness(knownLoudness);
+        gain = desiredGain;
+        volume = (float) Math.pow(10, gain / 20);
+    }
+
+    /**
+     * Applies a loudness that became known while the track is already playing.
+     */
+    public void setKnownLoudness(double knownLoudness)
+    {
+        if (Double.isNaN(knownLoudness))
+            return;
+        this.knownLoudness = knownLoudness;
+        desiredGain = limit(target - knownLoudness);
+    }
+
+    public boolean isLoudnessKnown()
+    {
+        return !Double.isNaN(knownLoudness);
+    }
+
+    /**
+     * @return the loudness measured so far in LUFS, NaN if there is none or the loudness was known.
+     */
+    public double getMeasuredLoudness()
+    {
+        return isLoudnessKnown() ? Double.NaN : meter.getIntegratedLoudness();
+    }
+
+    /**
+     * @return how much of the track was measured, in seconds.
+     */
+    public double getMeasuredTime()
+    {
+        return isLoudnessKnown() ? 0 : meter.getMeasuredTime();
+    }
+
+    /**
+     * @return the gain currently applied, in dB.
+     */
+    public double getGain()
+    {
+        return gain;
+    }
+
+    /**
+     * @return the gain the limiter currently applies on top of the normalization, 1 if it is not reducing anything.
+     */
+    public double getLimiterGain()
+    {
+        return limiter.getCurrentGain();
+    }
+
+    /**
+     * Measures the frame, if needed, and applies the gain to it in place.
+     */
+    public void process(byte[] frame, int offset, int length)
+    {
+        double slew = KNOWN_SLEW;
+        if (!isLoudnessKnown())
+        {
+            meter.add(frame, offset, length);
+            slew = ESTIMATE_SLEW;
+            if (++framesSinceEstimate >= ESTIMATE_INTERVAL && meter.getMeasuredTime() >= MIN_ESTIMATE_TIME)
+            {
+                framesSinceEstimate = 0;
+                double loudness = meter.getIntegratedLoudness();
+                if (!Double.isNaN(loudness))
+                    desiredGain = limit(target - loudness);
+            }
+        }
+
+        if (gain != desiredGain)
+        {
+            gain += Math.max(-slew, Math.min(slew, desiredGain - gain));
+            volume = (float) Math.pow(10, gain / 20);
+        }
+
+        final float scale = volume * SCALE;
+        final int count = Math.min(length / 2, samples.length);
+        for (int s = 0, i = offset; s < count; s++, i += 2)
+            samples[s] = ((short) ((frame[i] << 8) | (frame[i + 1] & 0xff))) * scale;
+
+        limiter.process(samples, count / AudioFilter.CHANNELS);
+
+        for (int s = 0, i = offset; s < count; s++, i += 2)
+        {
+            int sample = Math.round(samples[s] * 32768);
+            if (sample > Short.MAX_VALUE)
+                sample = Short.MAX_VALUE;
+            else if (sample < Short.MIN_VALUE)
+                sample = Short.MIN_VALUE;
+            frame[i] = (byte) (sample >> 8);
+            frame[i + 1] = (byte) sample;
+        }
+    }
+
+    private static double limit(double gain)
+    {
+        return Math.max(-MAX_CUT, Math.min(MAX_BOOST, gain));
+    }
+}
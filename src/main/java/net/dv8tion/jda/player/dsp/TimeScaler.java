@@ -0,0 +1,361 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.dsp;
+
+import java.util.Arrays;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Changes the tempo and the rate of a stream of 16bit big endian stereo PCM frames while it plays.
+ * <p>
+ * The tempo is changed with WSOLA: overlapping Hann windowed segments are taken from the input at the tempo's pace and
+ * added up at a fixed pace, each segment shifted by up to {@link #SEARCH} samples to where it best continues the
+ * previous one, so the pitch stays the same. The rate is changed afterwards by resampling with 4-point Hermite
+ * interpolation, which changes speed and pitch together, e.g. for nightcore. Changing both by inverse factors changes
+ * only the pitch. There is no anti-aliasing filter, so rates above 1 may add some harshness to very high frequencies.
+ * <p>
+ * Frames are {@link #push(byte[], int, int) pushed} in until one can be {@link #pull(byte[]) pulled} out, which may
+ * take more or less than one per output frame. At a tempo and rate of 1 the output is the input, a few milliseconds
+ * later. Everything is allocated up front, and a new tempo or rate applies from the next frame on.
+ */
+public class TimeScaler
+{
+    public static final double MIN_SPEED = 0.5;
+    public static final double MAX_SPEED = 2;
+
+    private static final int PAIRS = MusicPlayer.FRAME_SIZE / MusicPlayer.PCM_FRAME_SIZE;
+    private static final int WINDOW = 1024; // pairs, about 21ms
+    private static final int HOP = WINDOW / 2;
+    private static final int SEARCH = 256; // pairs either way
+    private static final int COARSE_STEP = 4;
+    private static final float SCALE = 1F / 32768;
+    private static final float[] HANN = new float[WINDOW];
+
+    static
+    {
+        for (int i = 0; i < WINDOW; i++)
+            HANN[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / WINDOW));
+    }
+
+    private volatile double tempo = 1;
+    private volatile double rate = 1;
+
+    //Only touched by the audio send thread. Sample buffers are interleaved stereo, indices count pairs.
+    private final float[] input = new float[8192 * 2];
+    private long inputBase;
+    private int inputCount;
+    //Where the next segment would be taken without any shift, and where the last one was taken.
+    private double analysis;
+    private long previous;
+    private final float[] tail = new float[HOP * 2];
+
+    private final float[] stretched = new float[2048 * 2];
+    private int stretchedCount;
+    private double resamplePosition;
+
+    private final byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+    private int frameFill;
+    private double frameInput;
+    private double lastFrameInput;
+
+    public TimeScaler()
+    {
+        reset();
+    }
+
+    public double getTempo()
+    {
+        return tempo;
+    }
+
+    /**
+     * Sets the speed without changing the pitch, between {@link #MIN_SPEED} and {@link #MAX_SPEED}.
+     */
+    public void setTempo(double tempo)
+    {
+        this.tempo = checkSpeed(tempo);
+    }
+
+    public double getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * Sets the speed and the pitch together, between {@link #MIN_SPEED} and {@link #MAX_SPEED}.
+     */
+    public void setRate(double rate)
+    {
+        this.rate = checkSpeed(rate);
+    }
+
+    /**
+     * @return true if neither the tempo nor the rate is changed.
+     */
+    public boolean isNeutral()
+    {
+        return tempo == 1 && rate == 1;
+    }
+
+    /**
+     * Forgets all buffered audio, e.g. when the stream changes.
+     */
+    public void reset()
+    {
+        //The first segment starts half a window before the input, so the input is not faded in.
+        Arrays.fill(input, 0, HOP * 2, 0);
+        inputBase = -HOP;
+        inputCount = HOP;
+        analysis = -HOP;
+        previous = Long.MIN_VALUE;
+        Arrays.fill(tail, 0);
+
+        //The interpolation looks at one sample before its position.
+        Arrays.fill(stretched, 0, 2, 0);
+        stretchedCount = 1;
+        resamplePosition = 1;
+
+        frameFill = 0;
+        frameInput = 0;
+    }
+
+    /**
+     * @return how much of the input the last pulled frame covers, in pairs. 960 at a tempo and rate of 1.
+     */
+    public double getLastFrameInput()
+    {
+        return lastFrameInput;
+    }
+
+    public void push(byte[] pcm, int offset, int length)
+    {
+        int pairs = length / MusicPlayer.PCM_FRAME_SIZE;
+        if (inputCount + pairs > input.length / 2)
+            compactInput();
+        if (inputCount + pairs > input.length / 2)
+            throw new IllegalStateException("Pushed more input than a frame can need!");
+
+        for (int s = inputCount * 2, i = offset, end = offset + pairs * MusicPlayer.PCM_FRAME_SIZE; i < end; s++, i += 2)
+            input[s] = ((short) ((pcm[i] << 8) | (pcm[i + 1] & 0xff))) * SCALE;
+        inputCount += pairs;
+    }
+
+    /**
+     * Produces the next frame, if there is enough input for it. Progress is kept if there is not.
+     *
+     * @return true if dest was filled, false if more input has to be pushed first.
+     */
+    public boolean pull(byte[] dest)
+    {
+        final double tempo = this.tempo;
+        final double rate = this.rate;
+
+        while (frameFill < PAIRS)
+        {
+            int index = (int) resamplePosition;
+            if (index + 2 >= stretchedCount)
+            {
+                if (!stretch(tempo))
+                    return false;
+                continue;
+            }
+
+            double fraction = resamplePosition - index;
+            int i = frameFill * MusicPlayer.PCM_FRAME_SIZE;
+            write(frame, i, interpolate(index * 2, fraction));
+            write(frame, i + 2, interpolate(index * 2 + 1, fraction));
+            resamplePosition += rate;
+            frameInput += tempo * rate;
+            frameFill++;
+        }
+
+        System.arraycopy(frame, 0, dest, 0, MusicPlayer.FRAME_SIZE);
+        lastFrameInput = frameInput;
+        frameInput = 0;
+        frameFill = 0;
+        return true;
+    }
+
+    /**
+     * Adds the next segment to the stretched samples.
+     *
+     * @return false if there is not enough input for it.
+     */
+    private boolean stretch(double tempo)
+    {
+        long nominal = Math.round(analysis);
+        long inputEnd = inputBase + inputCount;
+        long segment;
+        if (previous == Long.MIN_VALUE)
+        {
+            if (nominal + WINDOW > inputEnd)
+                return false;
+            segment = nominal;
+        }
+        else
+        {
+            long natural = previous + HOP;
+            if (nominal + SEARCH + WINDOW > inputEnd || natural + HOP > inputEnd)
+                return false;
+            //At the original tempo the natural continuation is right where the segment belongs, nothing beats that.
+            if (natural == nominal)
+                segment = nominal;
+            else
+                segment = nominal + findShift(natural, (int) (Math.max(nominal - SEARCH, inputBase) - nominal), nominal);
+        }
+
+        compactStretched();
+        int s = stretchedCount * 2;
+        int in = (int) (segment - inputBase) * 2;
+        for (int i = 0; i < HOP * 2; i++)
+            stretched[s + i] = tail[i] + HANN[i / 2] * input[in + i];
+        for (int i = 0; i < HOP * 2; i++)
+            tail[i] = HANN[HOP + i / 2] * input[in + HOP * 2 + i];
+        stretchedCount += HOP;
+
+        previous = segment;
+        analysis += HOP * tempo;
+        return true;
+    }
+
+    /**
+     * Finds the shift of the segment around nominal whose start is most similar to the natural continuation of the
+     * previous segment. The search runs on the mono sum, first over every {@link #COARSE_STEP}th shift and sample, then
+     * at full resolution around the best match. Smaller shifts win ties.
+     */
+    private int findShift(long natural, int minShift, long nominal)
+    {
+        int template = (int) (natural - inputBase) * 2;
+        int base = (int) (nominal - inputBase) * 2;
+
+        int best = 0;
+        double bestScore = similarity(template, base, COARSE_STEP);
+        for (int d = COARSE_STEP; d <= SEARCH; d += COARSE_STEP)
+        {
+            double score = similarity(template, base + d * 2, COARSE_STEP);
+            if (score > bestScore)
+            {
+                bestScore = score;
+                best = d;
+            }
+            if (-d >= minShift)
+            {
+                score = similarity(template, base - d * 2, COARSE_STEP);
+                if (score > bestScore)
+                {
+                    bestScore = score;
+                    best = -d;
+                }
+            }
+        }
+
+        int coarse = best;
+        bestScore = similarity(template, base + coarse * 2, 1);
+        for (int d = 1; d < COARSE_STEP; d++)
+        {
+            for (int sign = 1; sign >= -1; sign -= 2)
+            {
+                int shift = coarse + sign * d;
+                if (shift < minShift || shift > SEARCH)
+                    continue;
+                double score = similarity(template, base + shift * 2, 1);
+                if (score > bestScore)
+                {
+                    bestScore = score;
+                    best = shift;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the correlation of the first half window at both positions, normalized by the candidate's energy.
+     */
+    private double similarity(int template, int candidate, int step)
+    {
+        double correlation = 0;
+        double energy = 1e-9;
+        for (int i = 0; i < HOP * 2; i += step * 2)
+        {
+            float t = input[template + i] + input[template + i + 1];
+            float c = input[candidate + i] + input[candidate + i + 1];
+            correlation += t * c;
+            energy += c * c;
+        }
+        return correlation / Math.sqrt(energy);
+    }
+
+    private double interpolate(int s, double fraction)
+    {
+        float x0 = stretched[s - 2];
+        float x1 = stretched[s];
+        float x2 = stretched[s + 2];
+        float x3 = stretched[s + 4];
+        double c1 = 0.5 * (x2 - x0);
+        double c2 = x0 - 2.5 * x1 + 2 * x2 - 0.5 * x3;
+        double c3 = 0.5 * (x3 - x0) + 1.5 * (x1 - x2);
+        return ((c3 * fraction + c2) * fraction + c1) * fraction + x1;
+    }
+
+    private static void write(byte[] frame, int i, double value)
+    {
+        int sample = (int) Math.round(value * 32768);
+        if (sample > Short.MAX_VALUE)
+            sample = Short.MAX_VALUE;
+        else if (sample < Short.MIN_VALUE)
+            sample = Short.MIN_VALUE;
+        frame[i] = (byte) (sample >> 8);
+        frame[i + 1] = (byte) sample;
+    }
+
+    /**
+     * Drops the input no future segment can start at.
+     */
+    private void compactInput()
+    {
+        long keep = Math.round(analysis) - SEARCH;
+        if (previous != Long.MIN_VALUE)
+            keep = Math.min(keep, previous + HOP);
+        int drop = (int) Math.max(0, Math.min(keep - inputBase, inputCount));
+        if (drop == 0)
+            return;
+        System.arraycopy(input, drop * 2, input, 0, (inputCount - drop) * 2);
+        inputBase += drop;
+        inputCount -= drop;
+    }
+
+    /**
+     * Drops the stretched samples the interpolation has moved past.
+     */
+    private void compactStretched()
+    {
+        int drop = Math.min((int) resamplePosition - 1, stretchedCount);
+        if (drop <= 0)
+            return;
+        System.arraycopy(stretched, drop * 2, stretched, 0, (stretchedCount - drop) * 2);
+        stretchedCount -= drop;
+        resamplePosition -= drop;
+    }
+
+    private static double checkSpeed(double speed)
+    {
+        if (!(speed >= MIN_SPEED && speed <= MAX_SPEED))
+            throw new IllegalArgumentException("Speed must be between " + MIN_SPEED + " and " + MAX_SPEED + "!");
+        return speed;
+    }
+}
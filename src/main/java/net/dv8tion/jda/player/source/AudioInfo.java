@@ -29,6 +29,7 @@ public class AudioInfo
     protected String thumbnail;
     protected String error;
     protected AudioTimestamp duration;
+    protected volatile double loudness = Double.NaN;
 
     public JSONObject getJsonInfo()
     {
@@ -79,4 +80,12 @@ public class AudioInfo
     {
         return duration;
     }
+
+    /**
+     * @return the integrated loudness in LUFS, measured when the track was played before, or NaN if it is unknown.
+     */
+    public double getLoudness()
+    {
+        return loudness;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,215 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import net.dv8tion.jda.player.JDAPlayerConfig;
+
+/**
+ * Collects the URLs whose info is requested around the same time and extracts them together, instead of starting one
+ * Python interpreter, or sending one worker request, per URL. {@link RemoteSource#getInfo()} sends its cache misses
+ * through here.
+ * <p>
+ * A batch is started as soon as it is full, or once the flush delay passed since its first URL, so a single URL does
+ * not wait for others for long. With an {@link ExtractorPool} configured, the batch goes to one of its workers,
+ * otherwise to a single youtube-dl -j process. Both answer one line per URL, in order, either the json or an error.
+ * Each line is handed to its URL as soon as it was read.
+ */
+public class AudioInfoBatcher
+{
+    private static final ExecutorService EXTRACTOR = Executors.newCachedThreadPool(r ->
+    {
+        Thread thread = new Thread(r, "JDA-Player Info");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r ->
+    {
+        Thread thread = new Thread(r, "JDA-Player Info Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int batchSize;
+    private final long flushDelay;
+
+    // Guarded by this
+    private LinkedHashMap<String, CompletableFuture<AudioInfo>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * @param batchSize
+     *          The most URLs extracted by one process.
+     * @param flushDelay
+     *          The longest time a URL waits for the batch to fill up.
+     */
+    public AudioInfoBatcher(int batchSize, long flushDelay, TimeUnit unit)
+    {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("The batch size must be at least 1!");
+        if (flushDelay < 0)
+            throw new IllegalArgumentException("The flush delay cannot be negative!");
+
+        this.batchSize = batchSize;
+        this.flushDelay = unit.toMillis(flushDelay);
+    }
+
+    /**
+     * Queues the URL to be extracted with the default youtube-dl launch args.
+     *
+     * @return the info of the URL. Completes with null if youtube-dl printed nothing for it, it should then be extracted
+     *         on its own.
+     */
+    public synchronized CompletableFuture<AudioInfo> resolve(String url)
+    {
+        CompletableFuture<AudioInfo> future = pending.get(url);
+        if (future != null)
+            return future;
+
+        future = new CompletableFuture<>();
+        pending.put(url, future);
+        if (pending.size() >= batchSize)
+            flush();
+        else if (flushTask == null)
+            flushTask = TIMER.schedule(this::flush, flushDelay, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    /**
+     * Starts extracting the URLs queued so far, without waiting for the batch to fill up.
+     */
+    public synchronized void flush()
+    {
+        if (flushTask != null)
+        {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (pending.isEmpty())
+            return;
+
+        final LinkedHashMap<String, CompletableFuture<AudioInfo>> batch = pending;
+        pending = new LinkedHashMap<>();
+        //The whole batch takes a single extraction permit.
+        EXTRACTOR.execute(() -> RemoteSource.withExtractionPermit(() ->
+        {
+            extract(batch);
+            return null;
+        }));
+    }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public long getFlushDelay()
+    {
+        return flushDelay;
+    }
+
+    private static void extract(LinkedHashMap<String, CompletableFuture<AudioInfo>> batch)
+    {
+        ExtractorPool pool = JDAPlayerConfig.getEXTRACTOR_POOL();
+        if (pool != null)
+        {
+            if (pool.getInfos(new ArrayList<>(batch.keySet()), (url, info) -> batch.get(url).complete(info)))
+            {
+                //A URL the worker had no info for is extracted on its own.
+                for (CompletableFuture<AudioInfo> future : batch.values())
+                    future.complete(null);
+                return;
+            }
+            //No worker could answer, so what is left goes to a process of its own.
+            batch.values().removeIf(CompletableFuture::isDone);
+            if (batch.isEmpty())
+                return;
+        }
+
+        List<String> infoArgs = new ArrayList<>(JDAPlayerConfig.getYOUTUBE_DL_LAUNCH_ARGS());
+        infoArgs.add("--ignore-errors");    //Keep going after a URL failed, it prints an error line instead
+        infoArgs.add("-j");                 //Dumps one json line per URL
+        infoArgs.add("--skip-download");    //Doesn't actually download the files.
+        infoArgs.addAll(batch.keySet());
+
+        //Removed as they are resolved, so the first one left is the URL youtube-dl is working on.
+        Map<String, CompletableFuture<AudioInfo>> unresolved = new LinkedHashMap<>(batch);
+        Process infoProcess = null;
+        try
+        {
+            infoProcess = new ProcessBuilder().command(infoArgs).start();
+            infoProcess.getOutputStream().close();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(infoProcess.getErrorStream(), StandardCharsets.UTF_8));   //YT-DL outputs to STDerr
+
+            String line;
+            while (!unresolved.isEmpty() && (line = reader.readLine()) != null)
+            {
+                if (!line.startsWith("{") && !line.startsWith("ERROR"))
+                    continue;   //Warnings and the like
+
+                String url = unresolved.keySet().iterator().next();
+                AudioInfo info = RemoteSource.parseInfo(line, url);
+                if (info.getError() == null)
+                    url = findUrl(unresolved, info, url);
+                unresolved.remove(url).complete(info);
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (infoProcess != null)
+                infoProcess.destroy();
+            for (CompletableFuture<AudioInfo> future : unresolved.values())
+                future.complete(null);
+        }
+    }
+
+    /**
+     * youtube-dl prints the infos in the order of the URLs. In case one was skipped without an error line, the info is
+     * matched to its URL by id where possible.
+     */
+    private static String findUrl(Map<String, CompletableFuture<AudioInfo>> unresolved, AudioInfo info, String next)
+    {
+        String key = TrackCache.getKey(info);
+        if (key == null)
+            return next;
+
+        for (String url : unresolved.keySet())
+        {
+            if (url.equals(info.getOrigin()) || Objects.equals(key, AudioInfoCache.getKey(url)))
+                return url;
+        }
+        return next;
+    }
+}
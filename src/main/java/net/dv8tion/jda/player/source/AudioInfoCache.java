@@ -0,0 +1,404 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide cache of the {@link AudioInfo} youtube-dl extracted, so queueing the same track again does not start
+ * another extraction.
+ * <p>
+ * Every info is kept on disk, one small binary file per key, and survives restarts. The most recently used ones are also
+ * held in memory. Infos expire after a fixed time, errors are never cached. A track is stored under the URL it was
+ * requested with and under its extractor and id, so a different URL of the same YouTube video is a hit as well.
+ * Concurrent lookups of the same key wait for one shared extraction.
+ * <p>
+ * Only the fields of {@link AudioInfo} are stored, so an info read back from the cache has no
+ * {@link AudioInfo#getJsonInfo() json info}. The {@link AudioInfo#getLoudness() loudness} is added once a track was
+ * measured while playing.
+ */
+public class AudioInfoCache
+{
+    private static final int FORMAT_VERSION = 2;
+    private static final String SUFFIX = ".info";
+    private static final int MAX_STRING_LENGTH = 1 << 20;
+    private static final Pattern YOUTUBE_ID = Pattern.compile(
+            "(?:youtube\\.com/(?:watch\\?(?:.*&)?v=|embed/|v/)|youtu\\.be/)([A-Za-z0-9_-]{11})");
+
+    private final File folder;
+    private final long ttl;
+    private final int memorySize;
+
+    // Guarded by itself. Ordered from least to most recently used.
+    private final LinkedHashMap<String, CachedInfo> memory;
+    private final ConcurrentHashMap<String, CompletableFuture<AudioInfo>> extracting = new ConcurrentHashMap<>();
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param ttl
+     *          The amount of milliseconds an info stays valid.
+     * @param memorySize
+     *          The amount of infos held in memory.
+     */
+    public AudioInfoCache(File folder, long ttl, int memorySize)
+    {
+        if (ttl <= 0)
+            throw new IllegalArgumentException("The time to live must be positive!");
+        if (memorySize < 0)
+            throw new IllegalArgumentException("The memory size cannot be negative!");
+
+        this.folder = folder;
+        this.ttl = ttl;
+        this.memorySize = memorySize;
+        this.memory = new LinkedHashMap<String, CachedInfo>(16, 0.75F, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedInfo> eldest)
+            {
+                return size() > AudioInfoCache.this.memorySize;
+            }
+        };
+        folder.mkdirs();
+
+        //Files are written when their info is extracted, so anything older than the ttl has expired.
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files != null)
+        {
+            long oldest = System.currentTimeMillis() - ttl;
+            for (File file : files)
+            {
+                if (file.lastModified() < oldest)
+                    file.delete();
+            }
+        }
+    }
+
+    /**
+     * Looks up the info of the URL, and runs the extraction if it is not cached. Only one extraction per URL runs at
+     * a time, concurrent callers wait for its result.
+     */
+    public AudioInfo get(String url, Supplier<AudioInfo> extraction)
+    {
+        AudioInfo info = lookupUrl(url);
+        if (info != null)
+            return info;
+
+        misses.incrementAndGet();
+        CompletableFuture<AudioInfo> future = new CompletableFuture<>();
+        CompletableFuture<AudioInfo> running = extracting.putIfAbsent(url, future);
+        if (running != null)
+            return running.join();
+
+        try
+        {
+            info = extraction.get();
+            store(url, info);
+            future.complete(info);
+            return info;
+        }
+        catch (RuntimeException e)
+        {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        finally
+        {
+            extracting.remove(url, future);
+        }
+    }
+
+    /**
+     * @return the cached info of the key, or null if there is none or it expired.
+     */
+    public AudioInfo lookup(String key)
+    {
+        CachedInfo entry;
+        synchronized (memory)
+        {
+            entry = memory.get(key);
+        }
+        if (entry != null)
+        {
+            if (!entry.isExpired())
+            {
+                memoryHits.incrementAndGet();
+                return entry.info;
+            }
+            synchronized (memory)
+            {
+                memory.remove(key);
+            }
+        }
+
+        File file = getFile(key);
+        entry = read(file);
+        if (entry == null)
+            return null;
+        if (entry.isExpired())
+        {
+            file.delete();
+            return null;
+        }
+
+        synchronized (memory)
+        {
+            memory.put(key, entry);
+        }
+        diskHits.incrementAndGet();
+        return entry.info;
+    }
+
+    /**
+     * Stores the loudness measured while the track played, so the next play of it is normalized from the start. The
+     * entries under the URL and the extractor and id of the track are updated, and keep their time to live.
+     *
+     * @param loudness
+     *          The integrated loudness in LUFS.
+     */
+    public void storeLoudness(String url, AudioInfo info, double loudness)
+    {
+        info.loudness = loudness;
+        if (info.getError() != null)
+            return;
+
+        updateEntry(url, info);
+        String idKey = TrackCache.getKey(info);
+        if (idKey != null)
+            updateEntry(idKey, info);
+    }
+
+    /**
+     * The key of the video a YouTube URL points to, in the same form as {@link TrackCache#getKey(AudioInfo)}, which
+     * finds it under any of its URLs without asking youtube-dl.
+     *
+     * @return the key, or null if the URL is not a YouTube video URL.
+     */
+    public static String getKey(String url)
+    {
+        Matcher matcher = YOUTUBE_ID.matcher(url);
+        return matcher.find() ? "youtube-" + matcher.group(1) : null;
+    }
+
+    public long getMemoryHits()
+    {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits()
+    {
+        return diskHits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    private AudioInfo lookupUrl(String url)
+    {
+        AudioInfo info = lookup(url);
+        if (info == null)
+        {
+            String idKey = getKey(url);
+            if (idKey != null)
+                info = lookup(idKey);
+        }
+        return info;
+    }
+
+    private void store(String url, AudioInfo info)
+    {
+        if (info == null || info.getError() != null)
+            return;
+
+        CachedInfo entry = new CachedInfo(info, System.currentTimeMillis());
+        storeEntry(url, entry);
+        String idKey = TrackCache.getKey(info);
+        if (idKey != null)
+            storeEntry(idKey, entry);
+    }
+
+    private void updateEntry(String key, AudioInfo info)
+    {
+        CachedInfo entry;
+        synchronized (memory)
+        {
+            entry = memory.get(key);
+        }
+        if (entry == null)
+            entry = read(getFile(key));
+        if (entry == null || entry.isExpired())
+            return;
+
+        if (entry.info != info)
+            entry.info.loudness = info.loudness;
+        storeEntry(key, entry);
+    }
+
+    private void storeEntry(String key, CachedInfo entry)
+    {
+        synchronized (memory)
+        {
+            memory.put(key, entry);
+        }
+
+        File file = getFile(key);
+        File partial = new File(file.getPath() + ".part");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial))))
+            {
+                write(out, entry);
+            }
+            Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            partial.delete();
+        }
+    }
+
+    private File getFile(String key)
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(hash.length * 2 + SUFFIX.length());
+            for (byte b : hash)
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            return new File(folder, name.append(SUFFIX).toString());
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);     //Every JVM has to support SHA-1
+        }
+    }
+
+    private static void write(DataOutputStream out, CachedInfo entry) throws IOException
+    {
+        AudioInfo info = entry.info;
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(entry.extracted);
+        writeString(out, info.title);
+        writeString(out, info.origin);
+        writeString(out, info.id);
+        writeString(out, info.encoding);
+        writeString(out, info.description);
+        writeString(out, info.extractor);
+        writeString(out, info.thumbnail);
+        out.writeLong(info.duration != null ? info.duration.getTotalMilliseconds() : -1);
+        out.writeDouble(info.loudness);
+    }
+
+    private CachedInfo read(File file)
+    {
+        if (!file.isFile())
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            int version = in.readByte();
+            if (version < 1 || version > FORMAT_VERSION)
+                return null;
+
+            long extracted = in.readLong();
+            AudioInfo info = new AudioInfo();
+            info.title = readString(in);
+            info.origin = readString(in);
+            info.id = readString(in);
+            info.encoding = readString(in);
+            info.description = readString(in);
+            info.extractor = readString(in);
+            info.thumbnail = readString(in);
+            long duration = in.readLong();
+            info.duration = duration >= 0 ? AudioTimestamp.fromMilliseconds(duration) : null;
+            if (version >= 2)
+                info.loudness = in.readDouble();
+            return new CachedInfo(info, extracted);
+        }
+        catch (IOException e)
+        {
+            //Truncated or otherwise unreadable, it is extracted again.
+            file.delete();
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        if (string == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        if (length > MAX_STRING_LENGTH)
+            throw new IOException("Corrupt string length: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private class CachedInfo
+    {
+        private final AudioInfo info;
+        private final long extracted;
+
+        private CachedInfo(AudioInfo info, long extracted)
+        {
+            this.info = info;
+            this.extracted = extracted;
+        }
+
+        private boolean isExpired()
+        {
+            return System.currentTimeMillis() - extracted > ttl;
+        }
+    }
+}
@@ -24,5 +24,16 @@ public interface AudioSource
     String getSource();
     AudioInfo getInfo();
     AudioStream asStream();
+
+    /**
+     * Opens a stream that starts at the given position instead of the beginning.
+     *
+     * @throws UnsupportedOperationException
+     *          If this source cannot start anywhere but the beginning.
+     */
+    default AudioStream asStream(AudioTimestamp start)
+    {
+        throw new UnsupportedOperationException("This AudioSource does not support seeking.");
+    }
     File asFile(String path, boolean deleteOnExists) throws FileAlreadyExistsException, FileNotFoundException;
 }
@@ -15,10 +15,15 @@
  */package net.dv8tion.jda.player.source;
 
 import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.regex.Pattern;
 
 public abstract class AudioStream extends BufferedInputStream
 {
+    //No longer used by the streams themselves, positions are counted in frames instead.
     public static final Pattern TIME_PATTERN = Pattern.compile("(?<=time=).*?(?= bitrate)");
 
     public AudioStream()
@@ -26,5 +31,192 @@ public abstract class AudioStream extends BufferedInputStream
         super(null);
     }
 
-    public abstract AudioTimestamp getCurrentTimestamp();
+    private static final long POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long EXIT_TIMEOUT = 2000; // ms
+
+    //Bytes of a frame that could not be completed before its deadline. They start the next frame.
+    private byte[] partialFrame;
+    private int partialLength = 0;
+    private volatile long paddedFrames = 0;
+    private volatile long framesRead = 0;
+
+    /**
+     * Reads one whole frame, assembling it across as many reads as it takes.
+     * <p>
+     * Silence is only padded in when the stream ends in the middle of the frame or when the deadline passes first.
+     * In the latter case the bytes read so far are kept and start the next frame, so the inserted silence never
+     * splits a sample.
+     *
+     * @param frame
+     *          The array to fill completely.
+     * @param deadline
+     *          The {@link System#nanoTime()} by which the frame has to be complete, or {@link Long#MAX_VALUE} to block
+     *          until it is.
+     * @return the length of the frame, or -1 if the stream ended before any byte of this frame was read.
+     */
+    public int readFrame(byte[] frame, long deadline) throws IOException
+    {
+        int amountRead = 0;
+        if (partialLength > 0)
+        {
+            System.arraycopy(partialFrame, 0, frame, 0, partialLength);
+            amountRead = partialLength;
+            partialLength = 0;
+        }
+
+        boolean ended = false;
+        while (amountRead < frame.length)
+        {
+            if (deadline != Long.MAX_VALUE && available() <= 0 && !isSourceFinished())
+            {
+                if (deadline - System.nanoTime() > 0)
+                {
+                    LockSupport.parkNanos(POLL_INTERVAL);
+                    continue;
+                }
+
+                keepPartial(frame, amountRead);
+                amountRead = 0;
+                break;
+            }
+
+            int read = read(frame, amountRead, frame.length - amountRead);
+            if (read < 0)
+            {
+                ended = true;
+                break;
+            }
+            amountRead += read;
+        }
+
+        if (amountRead == 0 && ended)
+            return -1;
+        if (amountRead < frame.length)
+        {
+            Arrays.fill(frame, amountRead, frame.length, (byte) 0);
+            paddedFrames++;
+        }
+        framesRead++;
+        return frame.length;
+    }
+
+    /**
+     * Reads one whole frame without ever blocking. Until the source has finished, only what {@link #available()}
+     * reports is read, and the bytes of a frame that is not complete yet are kept for the next call. Silence is only
+     * padded in when the stream ends in the middle of the frame.
+     *
+     * @param frame
+     *          The array to fill completely.
+     * @return the length of the frame, 0 if it is not complete yet, or -1 if the stream ended before any byte of this
+     *          frame was read.
+     */
+    public int pollFrame(byte[] frame) throws IOException
+    {
+        int amountRead = 0;
+        if (partialLength > 0)
+        {
+            System.arraycopy(partialFrame, 0, frame, 0, partialLength);
+            amountRead = partialLength;
+            partialLength = 0;
+        }
+
+        while (amountRead < frame.length)
+        {
+            int length = frame.length - amountRead;
+            if (!isSourceFinished())
+            {
+                int available = available();
+                if (available <= 0)
+                {
+                    keepPartial(frame, amountRead);
+                    return 0;
+                }
+                length = Math.min(length, available);
+            }
+
+            int read = read(frame, amountRead, length);
+            if (read < 0)
+                break;
+            amountRead += read;
+        }
+
+        if (amountRead == 0)
+            return -1;
+        if (amountRead < frame.length)
+        {
+            Arrays.fill(frame, amountRead, frame.length, (byte) 0);
+            paddedFrames++;
+        }
+        framesRead++;
+        return frame.length;
+    }
+
+    private void keepPartial(byte[] frame, int length)
+    {
+        if (partialFrame == null)
+            partialFrame = new byte[frame.length];
+        System.arraycopy(frame, 0, partialFrame, 0, length);
+        partialLength = length;
+    }
+
+    /**
+     * The position up to which this stream has been read through {@link #readFrame(byte[], long)} or
+     * {@link #pollFrame(byte[])}, counted from the start of the stream. This is ahead of what listeners have heard by
+     * however many frames a player buffers, see {@link net.dv8tion.jda.player.MusicPlayer#getCurrentTimestamp()} for
+     * that.
+     */
+    public AudioTimestamp getCurrentTimestamp()
+    {
+        return AudioTimestamp.fromMilliseconds(framesRead * 20);
+    }
+
+    /**
+     * @return the amount of frames {@link #readFrame(byte[], long)} and {@link #pollFrame(byte[])} had to pad with
+     *          silence.
+     */
+    public long getPaddedFrames()
+    {
+        return paddedFrames;
+    }
+
+    /**
+     * Used by {@link #readFrame(byte[], long)} and {@link #pollFrame(byte[])} to tell whether a read could block
+     * indefinitely. Once the process feeding this stream is gone, a read returns the remaining bytes or end-of-stream
+     * immediately.
+     * <p>
+     * Streams that cannot tell should return true, which makes deadline reads and polls fall back to blocking reads.
+     */
+    protected boolean isSourceFinished()
+    {
+        return true;
+    }
+
+    /**
+     * Tells whether the stream ended because the whole track was decoded, and not because a process crashed, lost its
+     * connection or was killed. Only meaningful once the stream has ended.
+     * <p>
+     * Streams that cannot tell should return true.
+     */
+    public boolean isComplete()
+    {
+        return true;
+    }
+
+    /**
+     * @return true if the process exits with status 0, waiting for it a little if it is still shutting down.
+     */
+    protected static boolean exitedCleanly(Process process)
+    {
+        if (process == null)
+            return false;
+        try
+        {
+            return process.waitFor(EXIT_TIMEOUT, TimeUnit.MILLISECONDS) && process.exitValue() == 0;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 }
@@ -15,57 +15,64 @@
  */
 package net.dv8tion.jda.player.source;
 
+/**
+ * An immutable point in time within a track, stored as a single amount of milliseconds.
+ */
 public class AudioTimestamp
 {
-    protected int hours;
-    protected int minutes;
-    protected int seconds;
-    protected int milliseconds;
+    protected final long totalMilliseconds;
 
     public AudioTimestamp(int hours, int minutes, int seconds, int milliseconds)
     {
-        this.hours = hours;
-        this.minutes = minutes;
-        this.seconds = seconds;
-        this.milliseconds = milliseconds;
+        this(((hours * 60L + minutes) * 60L + seconds) * 1000L + milliseconds);
+    }
+
+    protected AudioTimestamp(long totalMilliseconds)
+    {
+        this.totalMilliseconds = totalMilliseconds;
     }
 
     public String getTimestamp()
     {
         String timestamp = "";
-        timestamp += hours != 0 ? String.format("%02d:", hours) : "";
-        timestamp += String.format("%02d:%02d", minutes, seconds);
+        timestamp += getHours() != 0 ? String.format("%02d:", getHours()) : "";
+        timestamp += String.format("%02d:%02d", getMinutes(), getSeconds());
         return timestamp;
     }
 
     public String getFullTimestamp()
     {
-        return String.format("%02d:%02d:%02d.%03d", hours, minutes, seconds, milliseconds);
+        return String.format("%02d:%02d:%02d.%03d", getHours(), getMinutes(), getSeconds(), getMilliseconds());
     }
 
     public int getHours()
     {
-        return hours;
+        return (int) (totalMilliseconds / 3600000);
     }
 
     public int getMinutes()
     {
-        return minutes;
+        return (int) (totalMilliseconds / 60000 % 60);
     }
 
     public int getSeconds()
     {
-        return seconds;
+        return (int) (totalMilliseconds / 1000 % 60);
     }
 
     public int getMilliseconds()
     {
-        return milliseconds;
+        return (int) (totalMilliseconds % 1000);
     }
 
     public int getTotalSeconds()
     {
-        return (hours * 3600) + (minutes * 60) + seconds;
+        return (int) (totalMilliseconds / 1000);
+    }
+
+    public long getTotalMilliseconds()
+    {
+        return totalMilliseconds;
     }
 
     @Override
@@ -81,33 +88,106 @@ public class AudioTimestamp
             return false;
 
         AudioTimestamp oTime = (AudioTimestamp) o;
-        return oTime.hours == hours
-                && oTime.minutes == minutes
-                && oTime.seconds == seconds
-                && oTime.milliseconds == milliseconds;
+        return oTime.totalMilliseconds == totalMilliseconds;
     }
 
-    public static AudioTimestamp fromFFmpegTimestamp(String ffmpegTimestamp)
+    @Override
+    public int hashCode()
     {
-        String[] timeParts = ffmpegTimestamp.split(":");
-        int hours = Integer.parseInt(timeParts[0]);
-        int minutes = Integer.parseInt(timeParts[1]);
+        return Long.hashCode(totalMilliseconds);
+    }
 
-        timeParts = timeParts[2].split("\\.");
-        int seconds = Integer.parseInt(timeParts[0]);
-        int milliseconds = Integer.parseInt(timeParts[1]) * 10; //Multiply by 10 because it gives us .##, instead of .###
+    //Longest fields the parsers accept, which keeps every value far from overflowing.
+    private static final int MAX_FFMPEG_DIGITS = 6;
+    private static final int MAX_LEADING_DIGITS = 6;
+    private static final int MAX_DIGITS = 2;
+
+    /**
+     * Parses ffmpeg's HH:MM:SS.cc progress format without any intermediate Strings.
+     */
+    public static AudioTimestamp fromFFmpegTimestamp(String ffmpegTimestamp)
+    {
+        int hoursEnd = ffmpegTimestamp.indexOf(':');
+        int minutesEnd = ffmpegTimestamp.indexOf(':', hoursEnd + 1);
+        int secondsEnd = ffmpegTimestamp.indexOf('.', minutesEnd + 1);
+        if (hoursEnd < 0 || minutesEnd < 0 || secondsEnd < 0)
+            throw new NumberFormatException("Not an ffmpeg timestamp: " + ffmpegTimestamp);
+
+        int hours = parseDigits(ffmpegTimestamp, 0, hoursEnd, MAX_FFMPEG_DIGITS);
+        int minutes = parseDigits(ffmpegTimestamp, hoursEnd + 1, minutesEnd, MAX_FFMPEG_DIGITS);
+        int seconds = parseDigits(ffmpegTimestamp, minutesEnd + 1, secondsEnd, MAX_FFMPEG_DIGITS);
+        int centiseconds = parseDigits(ffmpegTimestamp, secondsEnd + 1, ffmpegTimestamp.length(), MAX_FFMPEG_DIGITS);
+        if (hours < 0 || minutes < 0 || seconds < 0 || centiseconds < 0)
+            throw new NumberFormatException("Not an ffmpeg timestamp: " + ffmpegTimestamp);
+        int milliseconds = centiseconds * 10; //Multiply by 10 because it gives us .##, instead of .###
 
         return new AudioTimestamp(hours, minutes, seconds, milliseconds);
     }
 
+    /**
+     * Parses a user provided position in the form of [[hh:]mm:]ss. The first field may be longer than two digits, e.g.
+     * 90 for a minute and a half.
+     *
+     * @throws NumberFormatException
+     *          with a message that can be shown to the user, if the position is not in that form.
+     */
+    public static AudioTimestamp fromString(String timestamp)
+    {
+        String[] parts = timestamp.trim().split(":", -1);
+        if (parts.length > 3)
+            throw new NumberFormatException(invalidPosition(timestamp));
+
+        long seconds = 0;
+        for (int i = 0; i < parts.length; i++)
+        {
+            String part = parts[i];
+            int value = parseDigits(part, 0, part.length(), i == 0 ? MAX_LEADING_DIGITS : MAX_DIGITS);
+            if (value < 0)
+                throw new NumberFormatException(invalidPosition(timestamp));
+            seconds = seconds * 60 + value;
+        }
+        return new AudioTimestamp(seconds * 1000);
+    }
+
+    /**
+     * Formats this timestamp as ffmpeg expects it for -ss.
+     */
+    public String toFFmpegTimestamp()
+    {
+        return String.format("%d.%03d", totalMilliseconds / 1000, getMilliseconds());
+    }
+
     public static AudioTimestamp fromSeconds(int seconds)
     {
-        int hours = seconds / 3600;
-        seconds = seconds % 3600;
+        return new AudioTimestamp(seconds * 1000L);
+    }
 
-        int minutes = seconds / 60;
-        seconds = seconds % 60;
+    public static AudioTimestamp fromMilliseconds(long milliseconds)
+    {
+        return new AudioTimestamp(milliseconds);
+    }
+
+    private static String invalidPosition(String timestamp)
+    {
+        return "\"" + timestamp.trim() + "\" is not a valid position, use [[hh:]mm:]ss, e.g. 1:30";
+    }
 
-        return new AudioTimestamp(hours, minutes, seconds, 0);
+    /**
+     * @return the value of the digits, or -1 if there are none, more than maxDigits, or anything else.
+     */
+    private static int parseDigits(String s, int start, int end, int maxDigits)
+    {
+        if (start >= end || end - start > maxDigits)
+            return -1;
+
+        int value = 0;
+        for (int i = start; i < end; i++)
+        {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
     }
 }
@@ -0,0 +1,432 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A pool of long-lived youtube-dl processes, which resolve the info and the media URL of tracks without starting and
+ * importing youtube-dl again for every request.
+ * <p>
+ * Each worker runs the jda_player_worker.py script, which imports youtube-dl once and then answers one JSON request per
+ * line on stdin with one JSON line on stdout. Workers are started on demand up to the pool size. A worker that was idle
+ * for a while is pinged before it is used again, and it is replaced after a fixed amount of requests, so whatever
+ * youtube-dl leaks or caches cannot pile up. A worker that does not answer in time is killed. The infos of an
+ * {@link AudioInfoBatcher} batch are requested from one worker at once, which answers them one by one.
+ * <p>
+ * Whenever the pool cannot answer, the methods return null and the caller falls back to starting youtube-dl itself.
+ */
+public class ExtractorPool
+{
+    private static final long STARTUP_TIMEOUT = 30000; // ms
+    private static final long HEALTH_CHECK_AFTER = 60000; // ms idle
+    private static final long HEALTH_CHECK_TIMEOUT = 5000; // ms
+
+    //Starts workers in the background.
+    private static final ExecutorService STARTER = Executors.newCachedThreadPool(r ->
+    {
+        Thread thread = new Thread(r, "JDA-Player Extractor Starter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(r ->
+    {
+        Thread thread = new Thread(r, "JDA-Player Extractor Watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<String> command;
+    private final int maxRequests;
+    private final long timeout;
+
+    //One permit per worker that is busy or being started. A new worker is only started when none is idle.
+    private final Semaphore permits;
+    private final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private volatile boolean closed = false;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong workersStarted = new AtomicLong();
+
+    /**
+     * @param command
+     *          The command that starts a worker, e.g. python, the worker script and the youtube-dl executable.
+     * @param size
+     *          The most workers running at once.
+     * @param maxRequests
+     *          The amount of requests after which a worker is replaced.
+     * @param timeout
+     *          How long a request may take before its worker is killed.
+     */
+    public ExtractorPool(List<String> command, int size, int maxRequests, long timeout, TimeUnit unit)
+    {
+        if (size < 1)
+            throw new IllegalArgumentException("The pool needs at least one worker!");
+        if (maxRequests < 1)
+            throw new IllegalArgumentException("A worker has to serve at least one request!");
+
+        this.command = new ArrayList<>(command);
+        this.permits = new Semaphore(size);
+        this.maxRequests = maxRequests;
+        this.timeout = unit.toMillis(timeout);
+    }
+
+    public ExtractorPool(String python, String workerScript, String youtubeDl, int size, int maxRequests, long timeout, TimeUnit unit)
+    {
+        this(Arrays.asList(python, workerScript, youtubeDl), size, maxRequests, timeout, unit);
+    }
+
+    /**
+     * Extracts the info of the URL.
+     *
+     * @return the info, which holds the error if youtube-dl could not extract it, or null if no worker could answer.
+     */
+    public AudioInfo getInfo(String url)
+    {
+        JSONObject response = request(worker -> worker.call("info", url, timeout));
+        return response != null ? toInfo(response, url) : null;
+    }
+
+    /**
+     * Extracts the infos of several URLs with one worker. Each info is handed to the consumer as soon as the worker
+     * answered it, in the order of the URLs.
+     *
+     * @return false if no worker could answer all of them. The URLs that were not handed out have to be extracted
+     *         otherwise.
+     */
+    public boolean getInfos(List<String> urls, BiConsumer<String, AudioInfo> consumer)
+    {
+        Boolean done = request(worker -> worker.callEach(urls, timeout, response ->
+        {
+            int index = response.optInt("index", -1);
+            if (index < 0 || index >= urls.size())
+                return;
+            AudioInfo info = toInfo(response, urls.get(index));
+            if (info != null)
+                consumer.accept(urls.get(index), info);
+        }));
+        return done != null;
+    }
+
+    /**
+     * Resolves the URL of the media itself, like youtube-dl -g does.
+     *
+     * @return the media URL, or null if it could not be resolved.
+     */
+    public String getMediaUrl(String url)
+    {
+        JSONObject response = request(worker -> worker.call("url", url, timeout));
+        if (response == null || !response.optBoolean("ok"))
+            return null;
+        return response.optString("url", null);
+    }
+
+    /**
+     * Starts all workers in the background, so the first requests do not have to wait for youtube-dl to be imported.
+     */
+    public void prestart()
+    {
+        while (permits.tryAcquire())
+        {
+            STARTER.execute(() ->
+            {
+                try
+                {
+                    idle.offer(new Worker());
+                }
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+                finally
+                {
+                    permits.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Stops all idle workers, and every busy one once its request is answered.
+     */
+    public void close()
+    {
+        closed = true;
+        Worker worker;
+        while ((worker = idle.poll()) != null)
+            worker.close();
+    }
+
+    public long getRequests()
+    {
+        return requests.get();
+    }
+
+    /**
+     * @return the amount of requests no worker could answer, which had to fall back to starting youtube-dl.
+     */
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+    public long getWorkersStarted()
+    {
+        return workersStarted.get();
+    }
+
+    private static AudioInfo toInfo(JSONObject response, String url)
+    {
+        if (!response.optBoolean("ok"))
+        {
+            AudioInfo info = new AudioInfo();
+            String error = response.optString("error");
+            info.error = error.startsWith("ERROR") ? error : "ERROR: " + error;    //Like youtube-dl -j prints it
+            return info;
+        }
+        JSONObject info = response.optJSONObject("info");
+        return info != null ? RemoteSource.parseInfo(info, url) : null;
+    }
+
+    private <T> T request(Call<T> call)
+    {
+        if (closed)
+            return null;
+
+        requests.incrementAndGet();
+        Worker worker = borrow();
+        if (worker == null)
+        {
+            failures.incrementAndGet();
+            return null;
+        }
+
+        boolean healthy = false;
+        try
+        {
+            T response = call.call(worker);
+            healthy = true;
+            return response;
+        }
+        catch (IOException | JSONException e)
+        {
+            failures.incrementAndGet();
+            e.printStackTrace();
+            return null;
+        }
+        finally
+        {
+            release(worker, healthy);
+        }
+    }
+
+    private Worker borrow()
+    {
+        try
+        {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+                return null;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        Worker worker;
+        while ((worker = idle.poll()) != null)
+        {
+            if (worker.isHealthy())
+                return worker;
+            worker.close();
+        }
+
+        try
+        {
+            return new Worker();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            permits.release();
+            return null;
+        }
+    }
+
+    private void release(Worker worker, boolean healthy)
+    {
+        if (!healthy || closed || worker.requests >= maxRequests)
+            worker.close();
+        else
+            idle.offer(worker);
+        permits.release();
+    }
+
+    private interface Call<T>
+    {
+        T call(Worker worker) throws IOException;
+    }
+
+    private class Worker
+    {
+        private final Process process;
+        private final BufferedWriter requestWriter;
+        private final BufferedReader responseReader;
+        private final ProcessPump.Pump errPump;
+        private int requests = 0;
+        private int nextId = 1;
+        private long lastUsed = System.currentTimeMillis();
+
+        private Worker() throws IOException
+        {
+            ProcessBuilder pBuilder = new ProcessBuilder(command);
+            System.out.println("Command: " + pBuilder.command());
+            process = pBuilder.start();
+            workersStarted.incrementAndGet();
+            requestWriter = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            responseReader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            errPump = ProcessPump.drain(process, process.getErrorStream(), (buffer, amountRead) ->
+            {
+                System.out.println("ERR WORKER: " + new String(buffer, 0, amountRead, StandardCharsets.UTF_8));
+            });
+
+            //The worker says hello once youtube-dl was imported.
+            try
+            {
+                read(0, STARTUP_TIMEOUT);
+            }
+            catch (IOException | JSONException e)
+            {
+                close();
+                throw e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+        }
+
+        private JSONObject call(String op, String url, long timeout) throws IOException
+        {
+            JSONObject request = new JSONObject();
+            request.put("op", op);
+            if (url != null)
+                request.put("url", url);
+            return read(send(request), timeout);
+        }
+
+        /**
+         * Sends a batch of info requests, and hands the answer of every URL to the consumer until the worker is done.
+         * Each answer has the full timeout, so a long batch is not killed while it makes progress.
+         *
+         * @return true, or null if the worker could not handle the batch as a whole.
+         */
+        private Boolean callEach(List<String> urls, long timeout, Consumer<JSONObject> consumer) throws IOException
+        {
+            JSONObject request = new JSONObject();
+            request.put("op", "infos");
+            request.put("urls", new JSONArray(urls));
+            int id = send(request);
+
+            JSONObject response;
+            while ((response = read(id, timeout)).has("index"))
+                consumer.accept(response);
+            return response.optBoolean("done") ? Boolean.TRUE : null;
+        }
+
+        private int send(JSONObject request) throws IOException
+        {
+            int id = nextId++;
+            request.put("id", id);
+
+            requests++;
+            lastUsed = System.currentTimeMillis();
+            requestWriter.write(request.toString());
+            requestWriter.newLine();
+            requestWriter.flush();
+            return id;
+        }
+
+        private JSONObject read(int id, long timeout) throws IOException
+        {
+            //Reads cannot time out, so a hung worker is killed, which ends the read.
+            ScheduledFuture<?> watchdog = WATCHDOG.schedule(process::destroy, timeout, TimeUnit.MILLISECONDS);
+            try
+            {
+                String line;
+                while ((line = responseReader.readLine()) != null)
+                {
+                    JSONObject response = new JSONObject(line);
+                    if (response.optInt("id", -1) == id)
+                        return response;
+                }
+                throw new IOException("The extractor worker exited" + (watchdog.isDone() ? " after timing out" : ""));
+            }
+            finally
+            {
+                watchdog.cancel(false);
+            }
+        }
+
+        private boolean isHealthy()
+        {
+            if (!process.isAlive())
+                return false;
+            if (System.currentTimeMillis() - lastUsed < HEALTH_CHECK_AFTER)
+                return true;
+
+            try
+            {
+                return call("ping", null, HEALTH_CHECK_TIMEOUT).optBoolean("ok");
+            }
+            catch (IOException | JSONException e)
+            {
+                return false;
+            }
+        }
+
+        private void close()
+        {
+            errPump.cancel();
+            try
+            {
+                requestWriter.close();  //The worker exits on end-of-stream
+            }
+            catch (IOException ignored) {}
+            process.destroy();
+        }
+    }
+}
@@ -33,6 +33,7 @@ public class LocalSource implements AudioSource
     public static final List<String> FFMPEG_LAUNCH_ARGS =
         Collections.unmodifiableList(Arrays.asList(
                 "ffmpeg",       //Program launch
+                "-nostats",     //No progress output on STDerr, the position is counted in frames
                 "-f", "s16be",  //Format.  PCM, signed, 16bit, Big Endian
                 "-ac", "2",     //Channels. Specify 2 for stereo audio.
                 "-ar", "48000", //Rate. Opus requires an audio rate of 48000hz
@@ -125,7 +126,7 @@ public class LocalSource implements AudioSource
                     ? format.getString("format_long_name")
                     : null;
             audioInfo.duration = format.has("duration")
-                    ? AudioTimestamp.fromSeconds((int) format.getDouble("duration"))
+                    ? AudioTimestamp.fromMilliseconds((long) (format.getDouble("duration") * 1000))
                     : null;
 
         }
@@ -144,11 +145,22 @@ public class LocalSource implements AudioSource
 
     @Override
     public AudioStream asStream()
+    {
+        return asStream(null);
+    }
+
+    @Override
+    public AudioStream asStream(AudioTimestamp start)
     {
         List<String> ffmpegLaunchArgs = new LinkedList<>();
         ffmpegLaunchArgs.addAll(FFMPEG_LAUNCH_ARGS);
         try
         {
+            if (start != null)
+            {
+                ffmpegLaunchArgs.add("-ss");    //Placed before the input, so ffmpeg seeks in the file instead of decoding up to the position
+                ffmpegLaunchArgs.add(start.toFFmpegTimestamp());
+            }
             ffmpegLaunchArgs.add("-i");
             ffmpegLaunchArgs.add(file.getCanonicalPath());
             return new LocalStream(ffmpegLaunchArgs);
@@ -1,16 +1,12 @@
 package net.dv8tion.jda.player.source;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
 
 public class LocalStream extends AudioStream
 {
-    private Process ffmpegProcess;
-    private Thread ffmpegErrGobler;
-    private AudioTimestamp timestamp;
+    protected Process ffmpegProcess;
+    private ProcessPump.Pump ffmpegErrPump;
 
     public LocalStream(List<String> ffmpegLaunchArgs)
     {
@@ -22,44 +18,9 @@ public class LocalStream extends AudioStream
             System.out.println("Command: " + pBuilder.command());
             ffmpegProcess = pBuilder.start();
 
-            final Process ffmpegProcessF = ffmpegProcess;
+            //Only drained so ffmpeg never blocks on a full stderr pipe, the position is counted in frames instead.
+            ffmpegErrPump = ProcessPump.drain(ffmpegProcess, ffmpegProcess.getErrorStream(), (buffer, amountRead) -> {});
 
-            ffmpegErrGobler = new Thread()
-            {
-                @Override
-                public void run()
-                {
-                    try
-                    {
-                        InputStream fromFFmpeg = null;
-
-                        fromFFmpeg = ffmpegProcessF.getErrorStream();
-                        if (fromFFmpeg == null)
-                            System.out.println("fromFFmpeg is null");
-
-                        byte[] buffer = new byte[1024];
-                        int amountRead = -1;
-                        while (!isInterrupted() && ((amountRead = fromFFmpeg.read(buffer)) > -1))
-                        {
-                            String info = new String(Arrays.copyOf(buffer, amountRead));
-                            if (info.contains("time="))
-                            {
-                                Matcher m = TIME_PATTERN.matcher(info);
-                                if (m.find())
-                                {
-                                    timestamp = AudioTimestamp.fromFFmpegTimestamp(m.group());
-                                }
-                            }
-                        }
-                    }
-                    catch (IOException e)
-                    {
-                        e.printStackTrace();
-                    }
-                }
-            };
-
-            ffmpegErrGobler.start();
             this.in = ffmpegProcess.getInputStream();
         }
         catch (IOException e)
@@ -77,9 +38,16 @@ public class LocalStream extends AudioStream
     }
 
     @Override
-    public AudioTimestamp getCurrentTimestamp()
+    protected boolean isSourceFinished()
+    {
+        Process ffmpegProcess = this.ffmpegProcess;
+        return ffmpegProcess == null || !ffmpegProcess.isAlive();
+    }
+
+    @Override
+    public boolean isComplete()
     {
-        return timestamp;
+        return exitedCleanly(ffmpegProcess);
     }
 
     @Override
@@ -90,10 +58,10 @@ public class LocalStream extends AudioStream
             in.close();
             in = null;
         }
-        if (ffmpegErrGobler != null)
+        if (ffmpegErrPump != null)
         {
-            ffmpegErrGobler.interrupt();
-            ffmpegErrGobler = null;
+            ffmpegErrPump.cancel();
+            ffmpegErrPump = null;
         }
         if (ffmpegProcess != null)
         {
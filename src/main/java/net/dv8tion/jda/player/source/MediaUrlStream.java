@@ -0,0 +1,239 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import net.dv8tion.jda.player.MusicPlayer;
+import net.dv8tion.jda.utils.SimpleLog;
+
+/**
+ * Plays a direct media URL through ffmpeg alone. If ffmpeg fails before the track ended, most likely because the URL
+ * expired, the rest of the track is played from the fallback stream instead, which is opened at the position reached.
+ * <p>
+ * The fallback is opened in the background, since that starts youtube-dl and the thread reading this stream may be
+ * the audio send thread. Until it is ready, reads with a deadline get silence and blocking reads wait for it.
+ */
+public class MediaUrlStream extends LocalStream
+{
+    private static final long EXIT_TIMEOUT = 2000; // ms
+    private static final ExecutorService FAILOVER = Executors.newCachedThreadPool(r ->
+    {
+        Thread thread = new Thread(r, "JDA-Player Failover");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AudioTimestamp start;
+    private final Function<AudioTimestamp, AudioStream> fallback;
+    private final Object fallbackLock = new Object();
+    private volatile AudioStream fallbackStream;
+    //Set once ffmpeg stopped early, completes with true once the fallback took over.
+    private volatile CompletableFuture<Boolean> failover;
+    private volatile boolean closed = false;
+    private long bytesRead = 0;
+    //Zeros that complete the sample ffmpeg was cut off in, so the fallback starts on a whole sample.
+    private int padding = 0;
+
+    /**
+     * @param start
+     *          The position the ffmpeg args seek to, or null.
+     * @param fallback
+     *          Opens the stream to continue with at the given position.
+     */
+    public MediaUrlStream(List<String> ffmpegLaunchArgs, AudioTimestamp start, Function<AudioTimestamp, AudioStream> fallback)
+    {
+        super(ffmpegLaunchArgs);
+        this.start = start;
+        this.fallback = fallback;
+    }
+
+    /**
+     * @return true once the stream continues from the fallback.
+     */
+    public boolean hasFallenBack()
+    {
+        return fallbackStream != null;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        byte[] b = new byte[1];
+        int read;
+        while ((read = read(b, 0, 1)) == 0);
+        return read < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        AudioStream fallbackStream = this.fallbackStream;
+        if (fallbackStream != null)
+        {
+            if (padding > 0 && len > 0)
+            {
+                int padded = Math.min(padding, len);
+                for (int i = 0; i < padded; i++)
+                    b[off + i] = 0;
+                padding -= padded;
+                return padded;
+            }
+            return fallbackStream.read(b, off, len);
+        }
+
+        CompletableFuture<Boolean> failover = this.failover;
+        if (failover != null)
+        {
+            //Reads with a deadline do not get here before the failover is done, see isSourceFinished().
+            return failover.join() ? read(b, off, len) : -1;
+        }
+
+        int read = super.read(b, off, len);
+        if (read > 0)
+            bytesRead += read;
+        else if (read < 0 && !closed && !endedNormally())
+        {
+            this.failover = CompletableFuture.supplyAsync(this::failOver, FAILOVER);
+            return 0;   //Nothing to return yet, the fallback is still starting up
+        }
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        AudioStream fallbackStream = this.fallbackStream;
+        if (fallbackStream != null)
+            return padding + fallbackStream.available();
+        if (failover != null)
+            return 0;
+        return super.available();
+    }
+
+    @Override
+    protected boolean isSourceFinished()
+    {
+        AudioStream fallbackStream = this.fallbackStream;
+        if (fallbackStream != null)
+            return fallbackStream.isSourceFinished();
+        CompletableFuture<Boolean> failover = this.failover;
+        if (failover != null)
+            return failover.isDone();
+        return super.isSourceFinished();
+    }
+
+    @Override
+    public boolean isComplete()
+    {
+        AudioStream fallbackStream = this.fallbackStream;
+        if (fallbackStream != null)
+            return fallbackStream.isComplete();
+        return super.isComplete();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        AudioStream fallbackStream;
+        synchronized (fallbackLock)
+        {
+            closed = true;
+            fallbackStream = this.fallbackStream;
+        }
+        if (fallbackStream != null)
+            fallbackStream.close();
+        super.close();
+    }
+
+    /**
+     * Runs on the {@link #FAILOVER} pool.
+     *
+     * @return true if the fallback took over.
+     */
+    private boolean failOver()
+    {
+        if (closed || !exitedWithError())
+            return false;
+
+        long position = (start != null ? start.getTotalMilliseconds() : 0) + bytesRead / PcmSource.BYTES_PER_MILLISECOND;
+        SimpleLog.getLog("JDA-Player").warn("ffmpeg could not read the media URL, falling back at "
+                + AudioTimestamp.fromMilliseconds(position).getFullTimestamp());
+        AudioStream fallbackStream;
+        try
+        {
+            fallbackStream = fallback.apply(AudioTimestamp.fromMilliseconds(position));
+        }
+        catch (RuntimeException e)
+        {
+            SimpleLog.getLog("JDA-Player").log(e);
+            return false;
+        }
+        if (fallbackStream == null)
+            return false;
+
+        padding = (int) ((MusicPlayer.PCM_FRAME_SIZE - bytesRead % MusicPlayer.PCM_FRAME_SIZE) % MusicPlayer.PCM_FRAME_SIZE);
+        synchronized (fallbackLock)
+        {
+            if (!closed)
+            {
+                this.fallbackStream = fallbackStream;
+                return true;
+            }
+        }
+        try
+        {
+            fallbackStream.close();
+        }
+        catch (IOException e)
+        {
+            SimpleLog.getLog("JDA-Player").log(e);
+        }
+        return false;
+    }
+
+    /**
+     * @return true if ffmpeg already exited with status 0, which does not need a wait.
+     */
+    private boolean endedNormally()
+    {
+        Process ffmpegProcess = this.ffmpegProcess;
+        return ffmpegProcess != null && !ffmpegProcess.isAlive() && ffmpegProcess.exitValue() == 0;
+    }
+
+    private boolean exitedWithError()
+    {
+        Process ffmpegProcess = this.ffmpegProcess;
+        if (ffmpegProcess == null)
+            return false;
+
+        try
+        {
+            return ffmpegProcess.waitFor(EXIT_TIMEOUT, TimeUnit.MILLISECONDS) && ffmpegProcess.exitValue() != 0;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.dv8tion.jda.player.JDAPlayerConfig;
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Keeps decoded PCM of the tracks that are played the most, so they can be played through a {@link PcmSource} instead
+ * of starting ffmpeg (and youtube-dl) every time.
+ * <p>
+ * A track is promoted once it was played a configurable amount of times. It is then decoded once in the background,
+ * from its own source. The decoded files are kept in a {@link TrackCache}, which bounds their total size and evicts
+ * the least recently played first. Tracks longer than {@link #MAX_TRACK_LENGTH} are never promoted, their PCM would
+ * take too much space.
+ */
+public class PcmCache
+{
+    public static final long MAX_TRACK_LENGTH = 15 * 60 * 1000; // ms
+    private static final int MAX_COUNTED_TRACKS = 10000;
+    //Durations are rounded to whole seconds, and decoders may add or drop a little at either end.
+    private static final long DURATION_TOLERANCE = 2000; // ms
+
+    private static final ExecutorService DECODER = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "JDA-Player Decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TrackCache files;
+    private final int promoteAfter;
+
+    // Guarded by itself. Forgets the least recently played tracks first.
+    private final Map<String, Integer> plays = new LinkedHashMap<String, Integer>(16, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest)
+        {
+            return size() > MAX_COUNTED_TRACKS;
+        }
+    };
+
+    /**
+     * @param promoteAfter
+     *          The amount of plays after which a track is decoded into the cache.
+     */
+    public PcmCache(File folder, long maxBytes, int promoteAfter)
+    {
+        if (promoteAfter < 1)
+            throw new IllegalArgumentException("A track has to be played at least once before it can be promoted!");
+
+        this.files = new TrackCache(folder, maxBytes);
+        this.promoteAfter = promoteAfter;
+    }
+
+    /**
+     * Opens the source from the configured {@link JDAPlayerConfig#getPCM_CACHE() PCM cache} if it is in there, and
+     * from the source itself otherwise.
+     *
+     * @param start
+     *          The position to start at, or null to play the track from the start.
+     */
+    public static AudioStream open(AudioSource source, AudioTimestamp start)
+    {
+        PcmCache cache = JDAPlayerConfig.getPCM_CACHE();
+        if (cache != null)
+        {
+            AudioStream stream = cache.openCached(source, start);
+            if (stream != null)
+                return stream;
+        }
+        return start == null ? source.asStream() : source.asStream(start);
+    }
+
+    /**
+     * Counts a play of the source in the configured {@link JDAPlayerConfig#getPCM_CACHE() PCM cache}, if there is one.
+     * Called once a track is actually heard from its start, so tracks that were only preloaded don't count. Looking up
+     * the key may have to run youtube-dl, so this never runs on the audio send thread.
+     */
+    public static void played(AudioSource source)
+    {
+        PcmCache cache = JDAPlayerConfig.getPCM_CACHE();
+        if (cache != null)
+            cache.countPlay(source);
+    }
+
+    /**
+     * @return the cache key of the source, or null if it cannot be cached.
+     */
+    public static String getKey(AudioSource source)
+    {
+        if (source instanceof PcmSource)
+            return null;
+
+        if (source instanceof LocalSource)
+        {
+            String path = source.getSource();
+            if (path == null)
+                return null;
+            File file = new File(path);
+            //A changed file has to be decoded again.
+            return "file-" + Integer.toHexString(path.hashCode()) + "-" + Long.toHexString(file.lastModified()) + "-"
+                    + Long.toHexString(file.length());
+        }
+
+        return TrackCache.getKey(source.getInfo());
+    }
+
+    /**
+     * @return the decoded stream, or null if the source has not been promoted (yet).
+     */
+    public AudioStream openCached(AudioSource source, AudioTimestamp start)
+    {
+        String key = getKey(source);
+        if (key == null)
+            return null;
+
+        File pcm = files.lookup(key);
+        if (pcm != null)
+        {
+            AudioStream stream = new PcmSource(pcm, source.getInfo()).asStream(start);
+            if (stream != null)
+                return stream;
+        }
+        return null;
+    }
+
+    /**
+     * Counts a play of the source, and starts decoding it into the cache once it was played often enough.
+     */
+    public void countPlay(AudioSource source)
+    {
+        String key = getKey(source);
+        if (key != null && countPlay(key) >= promoteAfter)
+            promote(source, key);
+    }
+
+    /**
+     * @return the counters of the underlying file cache, a hit being a track played from decoded PCM.
+     */
+    public TrackCache getFiles()
+    {
+        return files;
+    }
+
+    public int getPromoteAfter()
+    {
+        return promoteAfter;
+    }
+
+    private int countPlay(String key)
+    {
+        synchronized (plays)
+        {
+            Integer count = plays.get(key);
+            count = count == null ? 1 : count + 1;
+            plays.put(key, count);
+            return count;
+        }
+    }
+
+    private void promote(AudioSource source, String key)
+    {
+        AudioTimestamp duration = source.getInfo().getDuration();
+        if (duration != null && duration.getTotalMilliseconds() > MAX_TRACK_LENGTH)
+            return;
+
+        TrackCache.Fill fill = files.fill(key);
+        if (fill == null)
+            return;     //Already being decoded
+        DECODER.execute(() -> decode(source, fill));
+    }
+
+    private static void decode(AudioSource source, TrackCache.Fill fill)
+    {
+        final long maxBytes = MAX_TRACK_LENGTH * PcmSource.BYTES_PER_MILLISECOND;
+        AudioStream stream = source.asStream();
+        if (stream == null)
+        {
+            fill.abort();
+            return;
+        }
+
+        boolean complete = false;
+        try
+        {
+            byte[] frame = new byte[MusicPlayer.FRAME_SIZE];
+            long written = 0;
+            int amountRead;
+            while ((amountRead = stream.readFrame(frame, Long.MAX_VALUE)) > -1 && written <= maxBytes)
+            {
+                fill.write(frame, 0, amountRead);
+                written += amountRead;
+            }
+            //A truncated file would be served forever, so only a clean and whole decode is kept.
+            complete = amountRead == -1 && written > 0 && stream.isComplete() && matchesDuration(source, written);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (complete)
+                fill.commit();
+            else
+                fill.abort();
+            try
+            {
+                stream.close();
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return false if the decoded PCM is noticeably shorter or longer than the track, true if the duration is unknown.
+     */
+    private static boolean matchesDuration(AudioSource source, long bytes)
+    {
+        AudioTimestamp duration = source.getInfo().getDuration();
+        if (duration == null)
+            return true;
+        long expected = duration.getTotalMilliseconds();
+        long decoded = bytes / PcmSource.BYTES_PER_MILLISECOND;
+        return Math.abs(decoded - expected) <= Math.max(DURATION_TOLERANCE, expected / 100);
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+
+/**
+ * A track that was already decoded into raw PCM (48kHz, 16bit big endian stereo), see {@link PcmCache}. Playing it
+ * needs no ffmpeg, it is read through a {@link PcmStream}.
+ */
+public class PcmSource implements AudioSource
+{
+    public static final int BYTES_PER_MILLISECOND = 48000 * 4 / 1000;
+
+    private final File file;
+    private AudioInfo audioInfo;
+
+    public PcmSource(File file)
+    {
+        this(file, null);
+    }
+
+    /**
+     * @param info
+     *          The info of the track the PCM was decoded from, or null to only derive the duration from the file.
+     */
+    public PcmSource(File file, AudioInfo info)
+    {
+        if (file == null)
+            throw new IllegalArgumentException("Provided file was null!");
+        if (!file.isFile())
+            throw new IllegalArgumentException("Provided file does not exist or is a directory!");
+
+        this.file = file;
+        this.audioInfo = info;
+    }
+
+    @Override
+    public String getSource()
+    {
+        return file.getAbsolutePath();
+    }
+
+    @Override
+    public AudioInfo getInfo()
+    {
+        if (audioInfo != null)
+            return audioInfo;
+
+        audioInfo = new AudioInfo();
+        audioInfo.origin = file.getAbsolutePath();
+        audioInfo.extractor = "PcmSource";
+        audioInfo.encoding = "s16be";
+        audioInfo.duration = AudioTimestamp.fromMilliseconds(file.length() / BYTES_PER_MILLISECOND);
+        return audioInfo;
+    }
+
+    @Override
+    public AudioStream asStream()
+    {
+        return asStream(null);
+    }
+
+    @Override
+    public AudioStream asStream(AudioTimestamp start)
+    {
+        try
+        {
+            return new PcmStream(file, start == null ? 0 : start.getTotalMilliseconds() * BYTES_PER_MILLISECOND);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public File asFile(String path, boolean deleteIfExists) throws FileAlreadyExistsException, FileNotFoundException
+    {
+        if (path == null || path.isEmpty())
+            throw new NullPointerException("Provided path was null or empty!");
+
+        File target = new File(path);
+        if (target.exists() && !deleteIfExists)
+        {
+            throw new FileAlreadyExistsException("The provided path already has an existing file " +
+                    " and the `deleteIfExists` boolean was set to false.");
+        }
+
+        try
+        {
+            Files.deleteIfExists(target.toPath());
+            Files.copy(file.toPath(), target.toPath());
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        return target;
+    }
+}
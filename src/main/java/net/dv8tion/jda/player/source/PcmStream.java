@@ -0,0 +1,109 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import net.dv8tion.jda.player.MusicPlayer;
+
+/**
+ * Serves frames straight out of a memory-mapped file of decoded PCM, in the format ffmpeg is told to output (48kHz,
+ * 16bit big endian stereo). There is no process behind it, so the first frame is available as soon as the file is
+ * mapped, and reads copy from the page cache into the caller's frame without any intermediate buffer.
+ */
+public class PcmStream extends AudioStream
+{
+    private volatile MappedByteBuffer pcm;
+
+    /**
+     * @param offset
+     *          The byte to start at. Rounded down to a whole sample of both channels.
+     */
+    public PcmStream(File file, long offset) throws IOException
+    {
+        //The mapping stays valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("The PCM file is too large to be mapped: " + file);
+            pcm = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        offset -= offset % MusicPlayer.PCM_FRAME_SIZE;
+        pcm.position((int) Math.max(0, Math.min(offset, pcm.limit())));
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        MappedByteBuffer pcm = getBuffer();
+        return pcm.hasRemaining() ? pcm.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        MappedByteBuffer pcm = getBuffer();
+        if (len == 0)
+            return 0;
+        if (!pcm.hasRemaining())
+            return -1;
+
+        len = Math.min(len, pcm.remaining());
+        pcm.get(b, off, len);
+        return len;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        MappedByteBuffer pcm = getBuffer();
+        int skipped = (int) Math.max(0, Math.min(n, pcm.remaining()));
+        pcm.position(pcm.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException
+    {
+        return getBuffer().remaining();
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        pcm = null;     //The mapping itself is released once it is garbage collected.
+        super.close();
+    }
+
+    private MappedByteBuffer getBuffer() throws IOException
+    {
+        MappedByteBuffer pcm = this.pcm;
+        if (pcm == null)
+            throw new IOException("Stream closed");
+        return pcm;
+    }
+}
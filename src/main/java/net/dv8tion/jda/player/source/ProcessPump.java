@@ -0,0 +1,171 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.dv8tion.jda.player.JDAPlayerConfig;
+
+/**
+ * Drains the side channels (stderr) of every process behind an {@link AudioStream} from one small, shared pool of
+ * threads, instead of parking one thread per pipe.
+ * <p>
+ * Process pipes cannot be made non-blocking, so there is no selector to wait on. Instead, each registered pipe is
+ * polled and only ever read for what {@link InputStream#available()} reports, which never blocks. Once the process has
+ * exited, the pipe cannot block anymore and is read until end-of-stream. Each pipe is read through its own fixed size
+ * buffer, and the bytes it pumped are counted.
+ */
+public final class ProcessPump
+{
+    public static final int BUFFER_SIZE = 1024;
+    private static final long POLL_INTERVAL = 200; // ms
+    private static final int MAX_READS_PER_POLL = 16;
+
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+    private static final ScheduledThreadPoolExecutor EXECUTOR;
+
+    static
+    {
+        EXECUTOR = new ScheduledThreadPoolExecutor(JDAPlayerConfig.getPUMP_THREADS(), r ->
+        {
+            Thread thread = new Thread(r, "JDA-Player Pump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        EXECUTOR.setRemoveOnCancelPolicy(true);
+    }
+
+    private ProcessPump()
+    {
+    }
+
+    public interface Sink
+    {
+        void accept(byte[] buffer, int length);
+    }
+
+    /**
+     * Starts draining the given pipe of the process into the sink. The sink is called from a pump thread.
+     */
+    public static Pump drain(Process process, InputStream input, Sink sink)
+    {
+        return drain(process, input, sink, null);
+    }
+
+    /**
+     * Starts draining the given pipe of the process into the sink. The sink is called from a pump thread, and so is
+     * onEnd, once the pipe reached end-of-stream.
+     */
+    public static Pump drain(Process process, InputStream input, Sink sink, Runnable onEnd)
+    {
+        Pump pump = new Pump(process, input, sink, onEnd);
+        ACTIVE.incrementAndGet();
+        pump.future = EXECUTOR.scheduleWithFixedDelay(pump, 0, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        if (pump.isDone())
+            pump.future.cancel(false);
+        return pump;
+    }
+
+    /**
+     * @return the amount of pipes currently being drained across all streams.
+     */
+    public static int getActivePumps()
+    {
+        return ACTIVE.get();
+    }
+
+    public static class Pump implements Runnable
+    {
+        private final Process process;
+        private final InputStream input;
+        private final Sink sink;
+        private final Runnable onEnd;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private volatile ScheduledFuture<?> future;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile long bytesPumped = 0;
+
+        private Pump(Process process, InputStream input, Sink sink, Runnable onEnd)
+        {
+            this.process = process;
+            this.input = input;
+            this.sink = sink;
+            this.onEnd = onEnd;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                for (int i = 0; i < MAX_READS_PER_POLL && !done.get(); i++)
+                {
+                    int available = input.available();
+                    if (available <= 0 && process.isAlive())
+                        return;
+
+                    //Once the process is gone, read() returns right away, either the last bytes or end-of-stream.
+                    int amountRead = input.read(buffer, 0, available > 0 ? Math.min(available, buffer.length) : buffer.length);
+                    if (amountRead < 0)
+                    {
+                        cancel();
+                        if (onEnd != null)
+                            onEnd.run();
+                        return;
+                    }
+                    bytesPumped += amountRead;
+                    sink.accept(buffer, amountRead);
+                }
+            }
+            catch (IOException e)
+            {
+                //The stream was closed underneath us, which is how streams stop their pumps.
+                cancel();
+            }
+            catch (RuntimeException e)
+            {
+                cancel();
+                e.printStackTrace();
+            }
+        }
+
+        public void cancel()
+        {
+            if (!done.compareAndSet(false, true))
+                return;
+            ACTIVE.decrementAndGet();
+            ScheduledFuture<?> future = this.future;
+            if (future != null)
+                future.cancel(false);
+        }
+
+        public boolean isDone()
+        {
+            return done.get();
+        }
+
+        public long getBytesPumped()
+        {
+            return bytesPumped;
+        }
+    }
+}
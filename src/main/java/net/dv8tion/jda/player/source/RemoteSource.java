@@ -24,9 +24,34 @@ import sun.misc.IOUtils;
 import java.io.*;
 import java.nio.file.FileAlreadyExistsException;
 import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class RemoteSource implements AudioSource
 {
+    //Lets ffmpeg reconnect when the connection to the media URL drops.
+    public static final List<String> MEDIA_URL_INPUT_ARGS = Collections.unmodifiableList(Arrays.asList(
+            "-reconnect", "1",
+            "-reconnect_streamed", "1",
+            "-reconnect_delay_max", "5"
+    ));
+
+    private static final Pattern MEDIA_URL_EXPIRY = Pattern.compile("[?&/]expire[=/](\\d{1,12})");
+    private static final long MEDIA_URL_TTL = 60 * 60 * 1000;       // ms, for URLs that do not tell
+    private static final long MEDIA_URL_MARGIN = 60 * 1000;         // ms
+    private static final int MAX_MEDIA_URLS = 1000;
+    // Guarded by itself. Forgets the least recently used URLs first.
+    private static final Map<String, ResolvedUrl> MEDIA_URLS = new LinkedHashMap<String, ResolvedUrl>(16, 0.75F, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ResolvedUrl> eldest)
+        {
+            return size() > MAX_MEDIA_URLS;
+        }
+    };
+
     private final String url;
     private final List<String> ytdlLaunchArgsF;
     private final List<String> ffmpegLaunchArgsF;
@@ -54,8 +79,52 @@ public class RemoteSource implements AudioSource
     @Override
     public AudioInfo getInfo()
     {
-        if (audioInfo != null)
-            return audioInfo;
+        synchronized (this)
+        {
+            if (audioInfo != null)
+                return audioInfo;
+        }
+
+        AudioInfo info = loadInfo();
+        synchronized (this)
+        {
+            audioInfo = info;
+        }
+        return info;
+    }
+
+    private AudioInfo loadInfo()
+    {
+        AudioInfoCache cache = JDAPlayerConfig.getINFO_CACHE();
+        return cache != null ? cache.get(url, this::extractInfo) : extractInfo();
+    }
+
+    private AudioInfo extractInfo()
+    {
+        //Custom args cannot share a process or a worker with other sources.
+        AudioInfoBatcher batcher = JDAPlayerConfig.getINFO_BATCHER();
+        if (batcher != null && ytdlLaunchArgsF == null)
+        {
+            AudioInfo info = batcher.resolve(url).join();
+            if (info != null)
+                return info;
+        }
+
+        return withExtractionPermit(this::extractOwnInfo);
+    }
+
+    /**
+     * Extracts the info of this source on its own, by a resident worker or by a youtube-dl process.
+     */
+    private AudioInfo extractOwnInfo()
+    {
+        ExtractorPool pool = JDAPlayerConfig.getEXTRACTOR_POOL();
+        if (pool != null && ytdlLaunchArgsF == null)
+        {
+            AudioInfo info = pool.getInfo(url);
+            if (info != null)
+                return info;
+        }
 
         List<String> infoArgs = new LinkedList<>();
         if (ytdlLaunchArgsF != null)
@@ -72,7 +141,6 @@ public class RemoteSource implements AudioSource
         infoArgs.add("--skip-download");    //Doesn't actually download the file.
         infoArgs.add(url);                  //specifies the URL to download.
 
-        audioInfo = new AudioInfo();
         try
         {
             Process infoProcess = new ProcessBuilder().command(infoArgs).start();
@@ -80,52 +148,78 @@ public class RemoteSource implements AudioSource
             if (infoData == null || infoData.length == 0)
                 throw new NullPointerException("The Youtube-DL process resulted in a null or zero-length INFO!");
 
-            String infoString = new String(infoData);
-            if (infoString.startsWith("ERROR"))
-            {
-                audioInfo.error = infoString;
-            }
-            else
-            {
-                JSONObject info = new JSONObject(infoString);
-
-                audioInfo.jsonInfo = info;
-                audioInfo.title = !info.optString("title", "").isEmpty()
-                        ? info.getString("title")
-                        : !info.optString("fulltitle", "").isEmpty()
-                        ? info.getString("fulltitle")
-                        : null;
-                audioInfo.origin = !info.optString("webpage_url", "").isEmpty()
-                        ? info.getString("webpage_url")
-                        : url;
-                audioInfo.id = !info.optString("id", "").isEmpty()
-                        ? info.getString("id")
-                        : null;
-                audioInfo.encoding = !info.optString("acodec", "").isEmpty()
-                        ? info.getString("acodec")
-                        : !info.optString("ext", "").isEmpty()
-                        ? info.getString("ext")
-                        : null;
-                audioInfo.description = !info.optString("description", "").isEmpty()
-                        ? info.getString("description")
-                        : null;
-                audioInfo.extractor = !info.optString("extractor", "").isEmpty()
-                        ? info.getString("extractor")
-                        : !info.optString("extractor_key").isEmpty()
-                        ? info.getString("extractor_key")
-                        : null;
-                audioInfo.thumbnail = !info.optString("thumbnail", "").isEmpty()
-                        ? info.getString("thumbnail")
-                        : null;
-                audioInfo.duration = info.optInt("duration", -1) != -1
-                        ? AudioTimestamp.fromSeconds(info.getInt("duration"))
-                        : null;
-            }
+            return parseInfo(new String(infoData), url);
         }
         catch (IOException e)
         {
+            AudioInfo audioInfo = new AudioInfo();
+            audioInfo.error = e.getMessage();
+            e.printStackTrace();
+            return audioInfo;
+        }
+    }
+
+    /**
+     * Turns what youtube-dl -j printed for one URL, either its json or an error, into an info.
+     */
+    static AudioInfo parseInfo(String infoString, String url)
+    {
+        if (infoString.startsWith("ERROR"))
+        {
+            AudioInfo audioInfo = new AudioInfo();
+            audioInfo.error = infoString;
+            return audioInfo;
+        }
+
+        try
+        {
+            return parseInfo(new JSONObject(infoString), url);
+        }
+        catch (JSONException e)
+        {
+            AudioInfo audioInfo = new AudioInfo();
             audioInfo.error = e.getMessage();
             e.printStackTrace();
+            return audioInfo;
+        }
+    }
+
+    static AudioInfo parseInfo(JSONObject info, String url)
+    {
+        AudioInfo audioInfo = new AudioInfo();
+        try
+        {
+            audioInfo.jsonInfo = info;
+            audioInfo.title = !info.optString("title", "").isEmpty()
+                    ? info.getString("title")
+                    : !info.optString("fulltitle", "").isEmpty()
+                    ? info.getString("fulltitle")
+                    : null;
+            audioInfo.origin = !info.optString("webpage_url", "").isEmpty()
+                    ? info.getString("webpage_url")
+                    : url;
+            audioInfo.id = !info.optString("id", "").isEmpty()
+                    ? info.getString("id")
+                    : null;
+            audioInfo.encoding = !info.optString("acodec", "").isEmpty()
+                    ? info.getString("acodec")
+                    : !info.optString("ext", "").isEmpty()
+                    ? info.getString("ext")
+                    : null;
+            audioInfo.description = !info.optString("description", "").isEmpty()
+                    ? info.getString("description")
+                    : null;
+            audioInfo.extractor = !info.optString("extractor", "").isEmpty()
+                    ? info.getString("extractor")
+                    : !info.optString("extractor_key").isEmpty()
+                    ? info.getString("extractor_key")
+                    : null;
+            audioInfo.thumbnail = !info.optString("thumbnail", "").isEmpty()
+                    ? info.getString("thumbnail")
+                    : null;
+            audioInfo.duration = info.optInt("duration", -1) != -1
+                    ? AudioTimestamp.fromSeconds(info.getInt("duration"))
+                    : null;
         }
         catch (JSONException e)
         {
@@ -138,8 +232,217 @@ public class RemoteSource implements AudioSource
     @Override
     public AudioStream asStream()
     {
-        List<String> ytdlLaunchArgs = new ArrayList<>();
+        return asStream(null);
+    }
+
+    /**
+     * Opens the stream at the given position.
+     * <p>
+     * A track in the {@link TrackCache} is read from disk. Otherwise, in the direct media URL mode and for every seek,
+     * ffmpeg reads the media URL youtube-dl resolved itself, so no youtube-dl process stays in the data path and ffmpeg
+     * seeks on the input side. If that fails, or the track is being written into the cache, youtube-dl downloads the
+     * media and pipes it into ffmpeg.
+     * <p>
+     * The cache is only filled from the pipeline, whose ffmpeg writes a copy of the whole media it reads. A media URL
+     * stream may fail over in the middle of the track, and its copy would then be incomplete. While a cache is
+     * configured, the first play of a track therefore always takes the pipeline, and the direct media URL is only used
+     * for seeks and for tracks another play is already caching.
+     */
+    @Override
+    public AudioStream asStream(AudioTimestamp start)
+    {
+        List<String> ffmpegLaunchArgs = getFfmpegLaunchArgs();
+        boolean hasInput = ffmpegLaunchArgs.contains("-i");
+        if (start != null && !hasInput)
+            throw new UnsupportedOperationException("The ffmpeg launch args do not specify an input to seek in.");
+
+        //A cached track is played like a LocalSource, which seeks in the file itself.
+        TrackCache cache = JDAPlayerConfig.getTRACK_CACHE();
+        String cacheKey = cache != null ? TrackCache.getKey(getInfo()) : null;
+        if (cacheKey != null && hasInput)
+        {
+            File cached = cache.lookup(cacheKey);
+            if (cached != null)
+                return new LocalStream(setInput(ffmpegLaunchArgs, cached.getAbsolutePath(), start, false));
+        }
+
+        //Only the pipeline reads the media from start to end in one go, which is what the cache needs.
+        TrackCache.Fill fill = cacheKey != null && start == null ? cache.fill(cacheKey) : null;
+        if (fill == null && hasInput && (start != null || JDAPlayerConfig.isDIRECT_MEDIA_URL()))
+        {
+            String mediaUrl = resolveMediaUrl();
+            if (mediaUrl != null)
+            {
+                return new MediaUrlStream(setInput(ffmpegLaunchArgs, mediaUrl, start, true), start, position ->
+                {
+                    invalidateMediaUrl();
+                    return openPipeline(position, null);
+                });
+            }
+        }
+        return openPipeline(start, fill);
+    }
+
+    private RemoteStream openPipeline(AudioTimestamp start, TrackCache.Fill fill)
+    {
+        List<String> ytdlLaunchArgs = getYtdlLaunchArgs();
+        ytdlLaunchArgs.add(url);    //specifies the URL to download.
+
+        List<String> ffmpegLaunchArgs = getFfmpegLaunchArgs();
+        if (start != null)
+        {
+            //ffmpeg cannot seek in a pipe, it decodes and drops everything up to the position.
+            int input = ffmpegLaunchArgs.indexOf("-i");
+            ffmpegLaunchArgs.add(input, "-ss");
+            ffmpegLaunchArgs.add(input + 1, start.toFFmpegTimestamp());
+        }
+
+        if (fill != null)
+            return new RemoteStream(ytdlLaunchArgs, ffmpegLaunchArgs, fill);
+        return new RemoteStream(ytdlLaunchArgs, ffmpegLaunchArgs);
+    }
+
+    /**
+     * Replaces the input of the ffmpeg args, seeking in it if a start is given.
+     */
+    private static List<String> setInput(List<String> ffmpegLaunchArgs, String input, AudioTimestamp start, boolean remote)
+    {
+        int index = ffmpegLaunchArgs.indexOf("-i");
+        ffmpegLaunchArgs.set(index + 1, input);
+        if (start != null)
+        {
+            ffmpegLaunchArgs.add(index, "-ss");     //Placed before the input, so ffmpeg seeks in the input
+            ffmpegLaunchArgs.add(index + 1, start.toFFmpegTimestamp());
+        }
+        if (remote)
+            ffmpegLaunchArgs.addAll(index, MEDIA_URL_INPUT_ARGS);
+        return ffmpegLaunchArgs;
+    }
+
+    /**
+     * Resolves the URL of the media itself, which ffmpeg can read and seek in without youtube-dl. Resolved URLs are
+     * shared by all sources of the same URL until they expire.
+     *
+     * @return the URL, or null if no resolver came up with one that is still valid for a while.
+     */
+    public String resolveMediaUrl()
+    {
+        String key = getMediaUrlKey();
+        ResolvedUrl resolved;
+        synchronized (MEDIA_URLS)
+        {
+            resolved = MEDIA_URLS.get(key);
+            if (resolved != null && resolved.isUsable())
+                return resolved.url;
+            if (resolved != null)
+                MEDIA_URLS.remove(key);
+        }
+
+        //youtube-dl -j includes the URL of the format it selected, but a cached info may be older than the URL lasts.
+        AudioInfo info = audioInfo;
+        resolved = usable(info != null && info.getJsonInfo() != null ? info.getJsonInfo().optString("url", null) : null);
+
+        ExtractorPool pool = JDAPlayerConfig.getEXTRACTOR_POOL();
+        if (resolved == null && pool != null && ytdlLaunchArgsF == null)
+            resolved = usable(withExtractionPermit(() -> pool.getMediaUrl(url)));
+
+        if (resolved == null)
+            resolved = usable(withExtractionPermit(this::extractMediaUrl));
+        if (resolved == null)
+            return null;
+
+        synchronized (MEDIA_URLS)
+        {
+            MEDIA_URLS.put(key, resolved);
+        }
+        return resolved.url;
+    }
+
+    /**
+     * @return the resolved URL, or null if there is none or it expires too soon to play from.
+     */
+    private static ResolvedUrl usable(String mediaUrl)
+    {
+        if (mediaUrl == null)
+            return null;
+        ResolvedUrl resolved = new ResolvedUrl(mediaUrl);
+        return resolved.isUsable() ? resolved : null;
+    }
+
+    /**
+     * Forgets the resolved media URL, for example because ffmpeg could not read it anymore.
+     */
+    public void invalidateMediaUrl()
+    {
+        String key = getMediaUrlKey();
+        synchronized (MEDIA_URLS)
+        {
+            MEDIA_URLS.remove(key);
+        }
+    }
+
+    private String extractMediaUrl()
+    {
+        List<String> urlArgs = getYtdlLaunchArgs();
+        urlArgs.add("-g");                  //Prints the media URL instead of downloading
+        urlArgs.add(url);
+        try
+        {
+            Process urlProcess = new ProcessBuilder().command(urlArgs).start();
+            byte[] urlData = IOUtils.readFully(urlProcess.getErrorStream(), -1, false);   //YT-DL outputs to STDerr
+            for (String line : new String(urlData).split("\\r?\\n"))
+            {
+                if (line.startsWith("http"))
+                    return line.trim();
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Runs a youtube-dl extraction, by a worker or by a process of its own, under one of the configured
+     * {@link JDAPlayerConfig#getEXTRACTION_PERMITS() extraction permits}, whichever thread asked for it.
+     */
+    static <T> T withExtractionPermit(Supplier<T> extraction)
+    {
+        Semaphore permits = JDAPlayerConfig.getEXTRACTION_PERMITS();
+        if (permits == null)
+            return extraction.get();
+
+        permits.acquireUninterruptibly();
+        try
+        {
+            return extraction.get();
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+
+    private String getMediaUrlKey()
+    {
+        //Custom args may select a different format.
+        return ytdlLaunchArgsF == null ? url : ytdlLaunchArgsF + " " + url;
+    }
+
+    private List<String> getFfmpegLaunchArgs()
+    {
         List<String> ffmpegLaunchArgs = new ArrayList<>();
+        if (ffmpegLaunchArgsF == null)
+            ffmpegLaunchArgs.addAll(JDAPlayerConfig.getFFMPEG_LAUNCH_ARGS());
+        else
+            ffmpegLaunchArgs.addAll(ffmpegLaunchArgsF);
+        return ffmpegLaunchArgs;
+    }
+
+    private List<String> getYtdlLaunchArgs()
+    {
+        List<String> ytdlLaunchArgs = new ArrayList<>();
         if (ytdlLaunchArgsF == null)
             ytdlLaunchArgs.addAll(JDAPlayerConfig.getYOUTUBE_DL_LAUNCH_ARGS());
         else
@@ -148,15 +451,7 @@ public class RemoteSource implements AudioSource
             if (!ytdlLaunchArgs.contains("-q"))
                 ytdlLaunchArgs.add("-q");
         }
-
-        if (ffmpegLaunchArgsF == null)
-            ffmpegLaunchArgs.addAll(JDAPlayerConfig.getFFMPEG_LAUNCH_ARGS());
-        else
-            ffmpegLaunchArgs.addAll(ytdlLaunchArgsF);
-
-        ytdlLaunchArgs.add(url);    //specifies the URL to download.
-
-        return new RemoteStream(ytdlLaunchArgs, ffmpegLaunchArgs);
+        return ytdlLaunchArgs;
     }
 
     @Override
@@ -226,4 +521,24 @@ public class RemoteSource implements AudioSource
         }
         return file;
     }
+
+    private static class ResolvedUrl
+    {
+        private final String url;
+        private final long expires;
+
+        private ResolvedUrl(String url)
+        {
+            this.url = url;
+            Matcher matcher = MEDIA_URL_EXPIRY.matcher(url);
+            this.expires = matcher.find()
+                    ? Long.parseLong(matcher.group(1)) * 1000
+                    : System.currentTimeMillis() + MEDIA_URL_TTL;
+        }
+
+        private boolean isUsable()
+        {
+            return expires - System.currentTimeMillis() > MEDIA_URL_MARGIN;
+        }
+    }
 }
@@ -15,186 +15,344 @@
  */
 package net.dv8tion.jda.player.source;
 
-import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import net.dv8tion.jda.player.JDAPlayerConfig;
 
 public class RemoteStream extends AudioStream
 {
+    //ProcessBuilder#startPipeline(List) only exists on Java 9 and above.
+    private static final Method START_PIPELINE;
+    private static final boolean FIFO_SUPPORTED = !System.getProperty("os.name").toLowerCase().startsWith("windows");
+
+    static
+    {
+        Method startPipeline = null;
+        try
+        {
+            startPipeline = ProcessBuilder.class.getMethod("startPipeline", List.class);
+        }
+        catch (NoSuchMethodException ignored) {}
+        START_PIPELINE = startPipeline;
+    }
+
     //Represent the processes that control the Python Youtube-dl and the FFmpeg program.
     private Process ytdlProcess;
     private Process ffmpegProcess;
 
-    //Async threads that deal with the piping of the outputs of the processes.
+    //Pipes youtube-dl's output into ffmpeg when the processes could not be connected directly, which is only the case
+    // with JDAPlayerConfig#isDIRECT_PIPE() off, or on Windows before Java 9. Writing to ffmpeg blocks whenever ffmpeg is
+    // throttled by the player, and a process pipe cannot be written without blocking, so this cannot be served by the
+    // shared ProcessPump.
     private Thread ytdlToFFmpegThread;
-    private Thread ytdlErrGobler;
-    private Thread ffmpegErrGobler;
-
-    private List<String> ytdlLaunchArgs;
-    private List<String> ffmpegLaunchArgs;
-    private AudioTimestamp timestamp = null;
+    //Named pipe connecting both processes on Java 8.
+    private volatile File fifo;
+    //Drain the stderr of both processes from the shared pump threads.
+    private ProcessPump.Pump ytdlErrPump;
+    private ProcessPump.Pump ffmpegErrPump;
+    //The cache entry ffmpeg writes a copy of the media into, committed on close if the whole track was streamed.
+    private TrackCache.Fill cacheFill;
+    private volatile boolean endOfStream = false;
 
     protected RemoteStream(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs)
     {
+        this(ytdlLaunchArgs, ffmpegLaunchArgs, JDAPlayerConfig.isDIRECT_PIPE());
+    }
+
+    /**
+     * @param directPipe
+     *          Whether youtube-dl's output should be connected to ffmpeg's input by the operating system, so the media
+     *          bytes never pass through the JVM. Falls back to copying them when that is not possible.
+     */
+    protected RemoteStream(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs, boolean directPipe)
+    {
+        this(ytdlLaunchArgs, ffmpegLaunchArgs, directPipe, null);
+    }
+
+    /**
+     * Streams the media while writing a copy of it into the {@link TrackCache}. ffmpeg writes the copy as a second
+     * output, remuxing the media it reads without decoding it, so the processes stay connected directly.
+     */
+    protected RemoteStream(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs, TrackCache.Fill cacheFill)
+    {
+        this(ytdlLaunchArgs, withCacheOutput(ffmpegLaunchArgs, cacheFill), JDAPlayerConfig.isDIRECT_PIPE(), cacheFill);
+    }
+
+    private RemoteStream(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs, boolean directPipe, TrackCache.Fill cacheFill)
+    {
+        this.cacheFill = cacheFill;
         try
         {
-            ProcessBuilder pBuilder = new ProcessBuilder();
+            if (!directPipe || !startConnected(ytdlLaunchArgs, ffmpegLaunchArgs))
+                startCopying(ytdlLaunchArgs, ffmpegLaunchArgs);
+
+            ytdlErrPump = ProcessPump.drain(ytdlProcess, ytdlProcess.getErrorStream(), (buffer, amountRead) ->
+            {
+                System.out.println("ERR YTDL: " + new String(Arrays.copyOf(buffer, amountRead)));
+            }, this::releaseFifo);
 
-            pBuilder.command(ytdlLaunchArgs);
-            System.out.println("Command: " + pBuilder.command());
-            ytdlProcess = pBuilder.start();
+            //Only drained so ffmpeg never blocks on a full stderr pipe, the position is counted in frames instead.
+            ffmpegErrPump = ProcessPump.drain(ffmpegProcess, ffmpegProcess.getErrorStream(), (buffer, amountRead) -> {});
 
-            pBuilder.command(ffmpegLaunchArgs);
-            System.out.println("Command: " + pBuilder.command());
-            ffmpegProcess = pBuilder.start();
+            this.in = ffmpegProcess.getInputStream();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+            try
+            {
+                close();
+            }
+            catch (IOException e1)
+            {
+                e1.printStackTrace();
+            }
+        }
+    }
 
-            final Process ytdlProcessF = ytdlProcess;
-            final Process ffmpegProcessF = ffmpegProcess;
+    /**
+     * @return true if the media bytes are piped from youtube-dl to ffmpeg without passing through the JVM.
+     */
+    public boolean isDirectlyPiped()
+    {
+        return ytdlProcess != null && ytdlToFFmpegThread == null;
+    }
 
-            ytdlToFFmpegThread = new Thread()
+    private boolean startConnected(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs) throws IOException
+    {
+        if (START_PIPELINE != null)
+        {
+            try
             {
-                @Override
-                public void run()
-                {
-                    InputStream fromYTDL = null;
-                    OutputStream toFFmpeg = null;
-                    try
-                    {
-                        fromYTDL = ytdlProcessF.getInputStream();
-                        toFFmpeg = ffmpegProcessF.getOutputStream();
-
-                        byte[] buffer = new byte[1024];
-                        int amountRead = -1;
-                        while (!isInterrupted() && ((amountRead = fromYTDL.read(buffer)) > -1))
-                        {
-                            toFFmpeg.write(buffer, 0, amountRead);
-                        }
-                        toFFmpeg.flush();
-                    }
-                    catch (IOException e)
-                    {
-                        e.printStackTrace();
-                    }
-                    finally
-                    {
-                        try
-                        {
-                            if (fromYTDL != null)
-                                fromYTDL.close();
-                        }
-                        catch (IOException e)
-                        {
-                            e.printStackTrace();
-                        }
-                        try
-                        {
-                            if (toFFmpeg != null)
-                                toFFmpeg.close();
-                        }
-                        catch (IOException e)
-                        {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-            };
+                @SuppressWarnings("unchecked")
+                List<Process> processes = (List<Process>) START_PIPELINE.invoke(null, Arrays.asList(
+                        new ProcessBuilder(ytdlLaunchArgs), new ProcessBuilder(ffmpegLaunchArgs)));
+                System.out.println("Command: " + ytdlLaunchArgs + " | " + ffmpegLaunchArgs);
+                ytdlProcess = processes.get(0);
+                ffmpegProcess = processes.get(1);
+                return true;
+            }
+            catch (IllegalAccessException e)
+            {
+                return false;
+            }
+            catch (InvocationTargetException e)
+            {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+        }
+
+        //On Java 8 both processes open a named pipe instead of their stdout/stdin. That only works if they were told
+        // to use the standard streams, so the "-" can be swapped for the pipe.
+        int output = indexOfArgument(ytdlLaunchArgs, "-o", "-");
+        int input = indexOfArgument(ffmpegLaunchArgs, "-i", "-");
+        if (!FIFO_SUPPORTED || output < 0 || input < 0)
+            return false;
+
+        fifo = createFifo();
+        if (fifo == null)
+            return false;
+
+        List<String> ytdlArgs = new ArrayList<>(ytdlLaunchArgs);
+        ytdlArgs.set(output + 1, fifo.getAbsolutePath());
+        ytdlArgs.add(output + 2, "--no-part");      //Write straight into the pipe instead of a .part file
+        List<String> ffmpegArgs = new ArrayList<>(ffmpegLaunchArgs);
+        ffmpegArgs.set(input + 1, fifo.getAbsolutePath());
+
+        ProcessBuilder pBuilder = new ProcessBuilder();
+
+        pBuilder.command(ytdlArgs);
+        System.out.println("Command: " + pBuilder.command());
+        ytdlProcess = pBuilder.start();
 
-            ytdlErrGobler = new Thread()
+        pBuilder.command(ffmpegArgs);
+        System.out.println("Command: " + pBuilder.command());
+        ffmpegProcess = pBuilder.start();
+
+        ytdlProcess.getInputStream().close();
+        ffmpegProcess.getOutputStream().close();
+        return true;
+    }
+
+    /**
+     * Adds a second output to the ffmpeg args, which copies the audio as it is read into the file of the fill.
+     * Matroska holds any audio codec youtube-dl may download.
+     */
+    private static List<String> withCacheOutput(List<String> ffmpegLaunchArgs, TrackCache.Fill cacheFill)
+    {
+        List<String> args = new ArrayList<>(ffmpegLaunchArgs);
+        args.add(1, "-y");     //The partial file may exist already, and ffmpeg must never ask on its stdin.
+        args.addAll(Arrays.asList("-map", "a", "-c:a", "copy", "-f", "matroska", cacheFill.getFile().getAbsolutePath()));
+        return args;
+    }
+
+    private void startCopying(List<String> ytdlLaunchArgs, List<String> ffmpegLaunchArgs) throws IOException
+    {
+        ProcessBuilder pBuilder = new ProcessBuilder();
+
+        pBuilder.command(ytdlLaunchArgs);
+        System.out.println("Command: " + pBuilder.command());
+        ytdlProcess = pBuilder.start();
+
+        pBuilder.command(ffmpegLaunchArgs);
+        System.out.println("Command: " + pBuilder.command());
+        ffmpegProcess = pBuilder.start();
+
+        final Process ytdlProcessF = ytdlProcess;
+        final Process ffmpegProcessF = ffmpegProcess;
+
+        ytdlToFFmpegThread = new Thread()
+        {
+            @Override
+            public void run()
             {
-                @Override
-                public void run()
+                InputStream fromYTDL = null;
+                OutputStream toFFmpeg = null;
+                try
                 {
+                    fromYTDL = ytdlProcessF.getInputStream();
+                    toFFmpeg = ffmpegProcessF.getOutputStream();
 
+                    byte[] buffer = new byte[1024];
+                    int amountRead = -1;
+                    while (!isInterrupted() && ((amountRead = fromYTDL.read(buffer)) > -1))
+                        toFFmpeg.write(buffer, 0, amountRead);
+                    toFFmpeg.flush();
+                }
+                catch (IOException e)
+                {
+                    e.printStackTrace();
+                }
+                finally
+                {
                     try
                     {
-                        InputStream fromYTDL = null;
-
-                        fromYTDL = ytdlProcessF.getErrorStream();
-                        if (fromYTDL == null)
-                            System.out.println("fromYTDL is null");
-
-                        byte[] buffer = new byte[1024];
-                        int amountRead = -1;
-                        while (!isInterrupted() && ((amountRead = fromYTDL.read(buffer)) > -1))
-                        {
-                            System.out.println("ERR YTDL: " + new String(Arrays.copyOf(buffer, amountRead)));
-                        }
+                        if (fromYTDL != null)
+                            fromYTDL.close();
                     }
                     catch (IOException e)
                     {
                         e.printStackTrace();
                     }
-                }
-            };
-
-            ffmpegErrGobler = new Thread()
-            {
-                @Override
-                public void run()
-                {
                     try
                     {
-                        InputStream fromFFmpeg = null;
-
-                        fromFFmpeg = ffmpegProcessF.getErrorStream();
-                        if (fromFFmpeg == null)
-                            System.out.println("fromYTDL is null");
-
-                        byte[] buffer = new byte[1024];
-                        int amountRead = -1;
-                        while (!isInterrupted() && ((amountRead = fromFFmpeg.read(buffer)) > -1))
-                        {
-                            String info = new String(Arrays.copyOf(buffer, amountRead));
-                            if (info.contains("time="))
-                            {
-                                Matcher m = TIME_PATTERN.matcher(info);
-                                if (m.find())
-                                {
-                                    timestamp = AudioTimestamp.fromFFmpegTimestamp(m.group());
-                                }
-                            }
-                        }
+                        if (toFFmpeg != null)
+                            toFFmpeg.close();
                     }
                     catch (IOException e)
                     {
                         e.printStackTrace();
                     }
                 }
-            };
+            }
+        };
+        ytdlToFFmpegThread.start();
+    }
 
-            ytdlToFFmpegThread.start();
-            ytdlErrGobler.start();
-            ffmpegErrGobler.start();
-            this.in = ffmpegProcess.getInputStream();
+    /**
+     * Called once youtube-dl has exited. If it died before opening the named pipe, ffmpeg is still waiting for a
+     * writer and would never see end-of-stream. Opening the pipe read-write never blocks, and closing it again leaves
+     * ffmpeg without a writer.
+     */
+    private void releaseFifo()
+    {
+        File fifo = this.fifo;
+        Process ffmpegProcess = this.ffmpegProcess;
+        if (fifo == null || ffmpegProcess == null || !ffmpegProcess.isAlive())
+            return;
+
+        try
+        {
+            new RandomAccessFile(fifo, "rw").close();
+        }
+        catch (IOException ignored) {}
+    }
+
+    private static int indexOfArgument(List<String> args, String option, String value)
+    {
+        for (int i = 0; i < args.size() - 1; i++)
+        {
+            if (args.get(i).equals(option) && args.get(i + 1).equals(value))
+                return i;
+        }
+        return -1;
+    }
+
+    private static File createFifo()
+    {
+        try
+        {
+            File fifo = File.createTempFile("jda-player-", ".fifo");
+            if (!fifo.delete())
+                return null;
+
+            Process mkfifo = new ProcessBuilder("mkfifo", fifo.getAbsolutePath()).start();
+            if (mkfifo.waitFor() != 0)
+                return null;
+            fifo.deleteOnExit();
+            return fifo;
         }
         catch (IOException e)
         {
-            e.printStackTrace();
-            try
-            {
-                close();
-            }
-            catch (IOException e1)
-            {
-                e1.printStackTrace();
-            }
+            return null;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
         }
     }
 
     @Override
-    public AudioTimestamp getCurrentTimestamp()
+    public synchronized int read(byte[] b, int off, int len) throws IOException
+    {
+        int read = super.read(b, off, len);
+        if (read < 0)
+            endOfStream = true;
+        return read;
+    }
+
+    @Override
+    protected boolean isSourceFinished()
     {
-        return timestamp;
+        Process ffmpegProcess = this.ffmpegProcess;
+        return ffmpegProcess == null || !ffmpegProcess.isAlive();
+    }
+
+    /**
+     * ffmpeg may exit cleanly on input that was cut off, so youtube-dl has to have delivered all of it as well.
+     */
+    @Override
+    public boolean isComplete()
+    {
+        return exitedCleanly(ytdlProcess) && exitedCleanly(ffmpegProcess);
     }
 
     @Override
     public void close() throws IOException
     {
+        TrackCache.Fill cacheFill = this.cacheFill;
+        if (cacheFill != null)
+        {
+            this.cacheFill = null;
+            //ffmpeg only ends its output once it has read all of youtube-dl's. A stream closed before that was skipped or
+            // stopped, and its copy is incomplete.
+            if (endOfStream && isComplete())
+                cacheFill.commit();
+            else
+                cacheFill.abort();
+        }
         if (in != null)
         {
             in.close();
@@ -205,15 +363,15 @@ public class RemoteStream extends AudioStream
             ytdlToFFmpegThread.interrupt();
             ytdlToFFmpegThread = null;
         }
-        if (ytdlErrGobler != null)
+        if (ytdlErrPump != null)
         {
-            ytdlErrGobler.interrupt();
-            ytdlErrGobler = null;
+            ytdlErrPump.cancel();
+            ytdlErrPump = null;
         }
-        if (ffmpegErrGobler != null)
+        if (ffmpegErrPump != null)
         {
-            ffmpegErrGobler.interrupt();
-            ffmpegErrGobler = null;
+            ffmpegErrPump.cancel();
+            ffmpegErrPump = null;
         }
         if (ffmpegProcess != null)
         {
@@ -225,6 +383,11 @@ public class RemoteStream extends AudioStream
             ytdlProcess.destroy();
             ytdlProcess = null;
         }
+        if (fifo != null)
+        {
+            fifo.delete();
+            fifo = null;
+        }
         super.close();
     }
 }
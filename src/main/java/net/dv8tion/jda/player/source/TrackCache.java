@@ -0,0 +1,281 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player.source;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk cache of the media youtube-dl downloads, keyed by extractor and id.
+ * <p>
+ * The cache is filled as a side effect of streaming, by the ffmpeg of the stream writing a copy of the media it reads
+ * into a file. Later plays of the same track read that file with a local ffmpeg instead of downloading again. The total size is bounded, and the least
+ * recently played tracks are evicted first. Recency is kept in the files' modification times, so it survives restarts.
+ * <p>
+ * {@link PcmCache} stores its decoded tracks in a cache of its own.
+ */
+public class TrackCache
+{
+    private static final String SUFFIX = ".media";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final File folder;
+    private final long maxBytes;
+
+    // Guarded by this. Ordered from least to most recently used.
+    private final LinkedHashMap<String, File> entries = new LinkedHashMap<>(16, 0.75F, true);
+    private final Set<String> filling = new HashSet<>();
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    public TrackCache(File folder, long maxBytes)
+    {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("The cache size must be positive!");
+
+        this.folder = folder;
+        this.maxBytes = maxBytes;
+        folder.mkdirs();
+
+        File[] files = folder.listFiles();
+        if (files == null)
+            return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (name.endsWith(PARTIAL_SUFFIX))
+                file.delete();  //Left over from a fill that never finished
+            else if (name.endsWith(SUFFIX))
+            {
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), file);
+                totalBytes += file.length();
+            }
+        }
+        synchronized (this)
+        {
+            evict();
+        }
+    }
+
+    /**
+     * @return the cache key for the track, or null if the info does not identify it.
+     */
+    public static String getKey(AudioInfo info)
+    {
+        if (info == null || info.getError() != null || info.getExtractor() == null || info.getId() == null)
+            return null;
+        return (info.getExtractor() + "-" + info.getId()).replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    /**
+     * @return the cached media of the track, or null on a miss.
+     */
+    public File lookup(String key)
+    {
+        File file;
+        synchronized (this)
+        {
+            file = entries.get(key);
+            if (file != null && !file.isFile())
+            {
+                entries.remove(key);
+                file = null;
+            }
+        }
+
+        if (file == null)
+        {
+            misses.incrementAndGet();
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        hits.incrementAndGet();
+        bytesSaved.addAndGet(file.length());
+        return file;
+    }
+
+    /**
+     * Starts filling the cache for the track.
+     *
+     * @return the fill to write the media into, or null if the track is already cached or being filled.
+     */
+    public Fill fill(String key)
+    {
+        synchronized (this)
+        {
+            if (entries.containsKey(key) || !filling.add(key))
+                return null;
+        }
+
+        return new Fill(key, new File(folder, key + PARTIAL_SUFFIX));
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public double getHitRatio()
+    {
+        long hits = this.hits.get();
+        long total = hits + misses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the amount of bytes that did not have to be downloaded again thanks to the cache.
+     */
+    public long getBytesSaved()
+    {
+        return bytesSaved.get();
+    }
+
+    public synchronized long getSize()
+    {
+        return totalBytes;
+    }
+
+    public long getMaxSize()
+    {
+        return maxBytes;
+    }
+
+    private synchronized void commit(String key, File partial)
+    {
+        filling.remove(key);
+        File file = new File(folder, key + SUFFIX);
+        if (!partial.renameTo(file))
+        {
+            partial.delete();
+            return;
+        }
+
+        entries.put(key, file);
+        totalBytes += file.length();
+        evict();
+    }
+
+    private synchronized void abort(String key, File partial)
+    {
+        filling.remove(key);
+        partial.delete();
+    }
+
+    // Guarded by this
+    private void evict()
+    {
+        Iterator<Map.Entry<String, File>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext())
+        {
+            File file = iterator.next().getValue();
+            long length = file.length();
+            //A file that can't be deleted right now (e.g. still open on Windows) keeps its entry, and its bytes stay
+            // counted until a later eviction gets rid of it.
+            if (file.delete() || !file.exists())
+            {
+                totalBytes -= length;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * A track being written into the cache, either through {@link #write(byte[], int, int)} or by a process that writes
+     * {@link #getFile()} itself. It only becomes visible once {@link #commit()} is called after the whole media was
+     * written. Anything else discards it.
+     */
+    public class Fill
+    {
+        private final String key;
+        private final File partial;
+        // Guarded by this, opened by the first write.
+        private FileOutputStream out;
+        private boolean finished = false;
+
+        private Fill(String key, File partial)
+        {
+            this.key = key;
+            this.partial = partial;
+        }
+
+        /**
+         * @return the file the media is written into until the fill is committed.
+         */
+        public File getFile()
+        {
+            return partial;
+        }
+
+        public synchronized void write(byte[] buffer, int offset, int length) throws IOException
+        {
+            if (finished)
+                throw new IOException("The fill was already finished!");
+            if (out == null)
+                out = new FileOutputStream(partial);
+            out.write(buffer, offset, length);
+        }
+
+        public synchronized void commit()
+        {
+            if (finished)
+                return;
+            finished = true;
+            try
+            {
+                if (out != null)
+                    out.close();
+                TrackCache.this.commit(key, partial);
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+                TrackCache.this.abort(key, partial);
+            }
+        }
+
+        public synchronized void abort()
+        {
+            if (finished)
+                return;
+            finished = true;
+            try
+            {
+                if (out != null)
+                    out.close();
+            }
+            catch (IOException ignored) {}
+            TrackCache.this.abort(key, partial);
+        }
+    }
+}
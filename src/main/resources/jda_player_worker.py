@@ -0,0 +1,100 @@
+"""
+Resident youtube-dl extractor of the JDA-Player ExtractorPool.
+
+Imports youtube-dl once from the executable zip given as the first argument, then answers one JSON request per line
+on stdin with one JSON line on stdout:
+
+    {"id": 1, "op": "info", "url": "..."}  ->  {"id": 1, "ok": true, "info": {...}}
+    {"id": 2, "op": "url", "url": "..."}   ->  {"id": 2, "ok": true, "url": "..."}
+    {"id": 3, "op": "ping"}                ->  {"id": 3, "ok": true}
+
+A batch of infos is answered with one line per URL as soon as it is extracted, then a last line once all are done:
+
+    {"id": 4, "op": "infos", "urls": ["...", "..."]}
+        ->  {"id": 4, "index": 0, "ok": true, "info": {...}}
+        ->  {"id": 4, "index": 1, "ok": false, "error": "..."}
+        ->  {"id": 4, "ok": true, "done": true}
+
+A failed request is answered with {"id": ..., "ok": false, "error": "..."}. Once started, {"id": 0, "ok": true} is
+written to tell that the import succeeded.
+"""
+from __future__ import unicode_literals
+
+import json
+import sys
+
+sys.path.insert(0, sys.argv[1])
+from youtube_dl import YoutubeDL  # noqa: E402
+
+# youtube-dl prints to stdout, which would corrupt the responses, so only they get the real one.
+responses = sys.stdout
+sys.stdout = sys.stderr
+
+ydl = YoutubeDL({
+    'quiet': True,
+    'no_warnings': True,
+    'format': 'bestaudio/best',
+    'noplaylist': True,
+    'simulate': True,
+    'skip_download': True,
+})
+
+
+def media_url(info):
+    if info.get('url'):
+        return info['url']
+    for requested in info.get('requested_formats') or []:
+        if requested.get('url'):
+            return requested['url']
+    raise ValueError('youtube-dl selected no format with a URL')
+
+
+def handle(request):
+    op = request.get('op')
+    if op == 'ping':
+        return {}
+    if op not in ('info', 'url'):
+        raise ValueError('Unknown op: %s' % op)
+
+    info = ydl.extract_info(request['url'], download=False)
+    if op == 'info':
+        return {'info': info}
+    return {'url': media_url(info)}
+
+
+def handle_batch(request):
+    for index, url in enumerate(request['urls']):
+        try:
+            response = {'index': index, 'ok': True, 'info': ydl.extract_info(url, download=False)}
+        except Exception as e:
+            response = {'index': index, 'ok': False, 'error': str(e) or type(e).__name__}
+        response['id'] = request['id']
+        respond(response)
+    return {'done': True}
+
+
+def respond(response):
+    responses.write(json.dumps(response, default=str) + '\n')
+    responses.flush()
+
+
+def main():
+    respond({'id': 0, 'ok': True})
+    for line in iter(sys.stdin.readline, ''):
+        line = line.strip()
+        if not line:
+            continue
+
+        request_id = None
+        try:
+            request = json.loads(line)
+            request_id = request.get('id')
+            response = handle_batch(request) if request.get('op') == 'infos' else handle(request)
+            response.update({'id': request_id, 'ok': True})
+        except Exception as e:
+            response = {'id': request_id, 'ok': False, 'error': str(e) or type(e).__name__}
+        respond(response)
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,162 @@
+package com.almightyalpaca.discord.bot.plugin.sound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the importer against a stub of the YouTube Data API, served through the configurable API URL.
+ */
+public class PlaylistImporterTest {
+
+	private static final String		KEY			= "test-key";
+	private static final long		TIMEOUT		= 10000;	// ms
+
+	private HttpServer				server;
+	private final Map<String, String>	pages		= new HashMap<>();
+	private final List<Map<String, String>>	requests	= new CopyOnWriteArrayList<>();
+	private MetadataScheduler		scheduler;
+	private PlaylistImporter		importer;
+
+	@Before
+	public void setUp() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/youtube/v3/playlistItems", this::respond);
+		this.server.start();
+		this.scheduler = new MetadataScheduler(1);
+		this.importer = new PlaylistImporter("http://127.0.0.1:" + this.server.getAddress().getPort() + "/youtube/v3/", PlaylistImporterTest.KEY);
+	}
+
+	@After
+	public void tearDown() {
+		this.importer.shutdown();
+		this.scheduler.shutdown();
+		this.server.stop(0);
+	}
+
+	@Test
+	public void importsAllPagesInOrder() throws Exception {
+		this.pages.put("", "{\"nextPageToken\": \"p2\", \"items\": [" + PlaylistImporterTest.video("a") + ", {\"snippet\": {\"resourceId\": {\"kind\": \"youtube#channel\"}}}, " + PlaylistImporterTest.video("b") + "]}");
+		this.pages.put("p2", "{\"items\": [" + PlaylistImporterTest.video("c") + "]}");
+		final RecordingPlayer player = new RecordingPlayer(this.scheduler, null);
+
+		final PlaylistImporter.Import playlistImport = this.importer.start(player, "PL1");
+		PlaylistImporterTest.await(playlistImport);
+
+		assertEquals(Arrays.asList("a", "b", "c"), player.videoIds());
+		assertEquals(3, playlistImport.getImported());
+		assertEquals("Playback starts once, with the first item", 1, player.plays.get());
+		assertEquals(2, this.requests.size());
+		for (final Map<String, String> query : this.requests) {
+			assertEquals("PL1", query.get("playlistId"));
+			assertEquals(PlaylistImporterTest.KEY, query.get("key"));
+			assertEquals("50", query.get("maxResults"));
+		}
+		assertEquals("p2", this.requests.get(1).get("pageToken"));
+	}
+
+	@Test
+	public void reportsAFailingPlayer() throws Exception {
+		this.pages.put("", "{\"items\": [" + PlaylistImporterTest.video("a") + ", " + PlaylistImporterTest.video("b") + "]}");
+		final RecordingPlayer player = new RecordingPlayer(this.scheduler, new IllegalStateException("The player broke"));
+
+		final ByteArrayOutputStream err = new ByteArrayOutputStream();
+		final PrintStream originalErr = System.err;
+		System.setErr(new PrintStream(err, true));
+		try {
+			PlaylistImporterTest.await(this.importer.start(player, "PL1"));
+		} finally {
+			System.setErr(originalErr);
+		}
+
+		assertEquals(Arrays.asList("a"), player.videoIds());
+		assertTrue("The exception is printed instead of being lost in the future", err.toString().contains("The player broke"));
+	}
+
+	private void respond(final HttpExchange exchange) throws IOException {
+		final Map<String, String> query = new HashMap<>();
+		for (final String parameter : exchange.getRequestURI().getRawQuery().split("&")) {
+			final String[] pair = parameter.split("=", 2);
+			query.put(URLDecoder.decode(pair[0], "UTF-8"), pair.length > 1 ? URLDecoder.decode(pair[1], "UTF-8") : "");
+		}
+		this.requests.add(query);
+
+		final String page = this.pages.get(query.getOrDefault("pageToken", ""));
+		final byte[] body = (page != null ? page : "{\"error\": {\"code\": 400}}").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(page != null ? 200 : 400, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static String video(final String videoId) {
+		return "{\"snippet\": {\"resourceId\": {\"kind\": \"youtube#video\", \"videoId\": \"" + videoId + "\"}}}";
+	}
+
+	private static void await(final PlaylistImporter.Import playlistImport) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + PlaylistImporterTest.TIMEOUT;
+		while (!playlistImport.isDone()) {
+			assertTrue("The import did not finish in time", System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Records what the importer queues instead of resolving and playing it.
+	 */
+	private static class RecordingPlayer extends SoundPlayer {
+
+		private final List<URL>			urls	= new CopyOnWriteArrayList<>();
+		private final AtomicInteger		plays	= new AtomicInteger();
+		private final RuntimeException	playFailure;
+
+		private RecordingPlayer(final MetadataScheduler scheduler, final RuntimeException playFailure) {
+			super(scheduler);
+			this.playFailure = playFailure;
+		}
+
+		@Override
+		public void add(final URL url) {
+			this.urls.add(url);
+		}
+
+		@Override
+		public void play() {
+			this.plays.incrementAndGet();
+			if (this.playFailure != null) {
+				throw this.playFailure;
+			}
+		}
+
+		private List<String> videoIds() {
+			final List<String> videoIds = new ArrayList<>();
+			for (final URL url : this.urls) {
+				videoIds.add(url.getQuery().substring("v=".length()));
+			}
+			return videoIds;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/**
+ *     Copyright 2016 Austin Keener
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.dv8tion.jda.player;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import net.dv8tion.jda.player.source.AudioSource;
+import net.dv8tion.jda.player.source.RemoteSource;
+
+public class AudioQueueTest
+{
+    private static final int STRESS_SIZE = 10000;
+    private static final int STRESS_OPERATIONS = 20000;    // per thread
+
+    @Test
+    public void pollsInOrder()
+    {
+        AudioQueue queue = new AudioQueue(sources("a", 3));
+        assertEquals("a0", queue.pollFirst().getSource());
+        assertEquals("a1", queue.pollFirst().getSource());
+        assertEquals("a2", queue.pollFirst().getSource());
+        assertNull(queue.pollFirst());
+    }
+
+    @Test
+    public void removeRangeReturnsTheRemovedSources()
+    {
+        AudioQueue queue = new AudioQueue(sources("a", 10));
+        assertEquals(ids("a", 2, 5), ids(queue.removeRange(2, 5)));
+        assertEquals(7, queue.size());
+        assertEquals("a5", queue.get(2).getSource());
+    }
+
+    @Test
+    public void addAllAndMoveKeepTheOrder()
+    {
+        AudioQueue queue = new AudioQueue(sources("a", 4));
+        queue.addAll(2, sources("b", 2));
+        queue.move(0, 5);
+        assertEquals(Arrays.asList("a1", "b0", "b1", "a2", "a3", "a0"), ids(queue.snapshot()));
+    }
+
+    /**
+     * The audio thread, editors and readers work on one queue at once. Every source has an id, and each edit counts what
+     * it inserted and removed. At the end the queue has to hold exactly those sources, so no edit lost or duplicated one.
+     */
+    @Test
+    public void concurrentEditsNeitherLoseNorDuplicateSources() throws InterruptedException
+    {
+        List<AudioSource> initial = sources("q", STRESS_SIZE);
+        List<AudioSource> page = sources("p", 50);
+        AudioQueue queue = new AudioQueue(initial);
+
+        Map<String, AtomicInteger> expected = new ConcurrentHashMap<>();
+        for (AudioSource source : initial)
+            expected.put(source.getSource(), new AtomicInteger(1));
+        for (AudioSource source : page)
+            expected.put(source.getSource(), new AtomicInteger());
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        threads.add(worker(start, failure, () ->
+        {
+            AudioSource source = queue.pollFirst();
+            queue.add(source);
+        }));
+        for (int i = 0; i < 2; i++)
+        {
+            threads.add(worker(start, failure, () ->
+            {
+                // The audio thread briefly holds one source, so the editors stay within the first half of the queue.
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                if (random.nextBoolean())
+                {
+                    queue.move(random.nextInt(STRESS_SIZE / 2), random.nextInt(STRESS_SIZE / 2));
+                    return;
+                }
+                queue.addAll(random.nextInt(STRESS_SIZE / 2), page);
+                for (AudioSource source : page)
+                    expected.get(source.getSource()).incrementAndGet();
+                for (AudioSource source : queue.removeRange(0, page.size()))
+                    expected.get(source.getSource()).decrementAndGet();
+            }));
+            threads.add(worker(start, failure, () ->
+            {
+                List<AudioSource> snapshot = queue.snapshot();
+                int count = 0;
+                for (AudioSource ignored : snapshot)
+                    count++;
+                if (count != snapshot.size())
+                    throw new AssertionError("A snapshot changed while it was read");
+            }));
+        }
+
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new AssertionError("A worker failed", failure.get());
+
+        Map<String, Integer> actual = new HashMap<>();
+        for (AudioSource source : queue.snapshot())
+            actual.merge(source.getSource(), 1, Integer::sum);
+        for (Map.Entry<String, AtomicInteger> entry : expected.entrySet())
+        {
+            assertEquals("Occurrences of " + entry.getKey(), entry.getValue().get(),
+                    (int) actual.getOrDefault(entry.getKey(), 0));
+        }
+        assertTrue("The queue holds a source that was never inserted", expected.keySet().containsAll(actual.keySet()));
+        assertEquals(STRESS_SIZE, queue.size());
+    }
+
+    private static Thread worker(CountDownLatch start, AtomicReference<Throwable> failure, Runnable operation)
+    {
+        Thread thread = new Thread(() ->
+        {
+            try
+            {
+                start.await();
+                for (int i = 0; i < STRESS_OPERATIONS && failure.get() == null; i++)
+                    operation.run();
+            }
+            catch (Throwable t)
+            {
+                failure.compareAndSet(null, t);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static List<AudioSource> sources(String prefix, int count)
+    {
+        List<AudioSource> sources = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            sources.add(new RemoteSource(prefix + i));
+        return sources;
+    }
+
+    private static List<String> ids(String prefix, int from, int to)
+    {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i < to; i++)
+            ids.add(prefix + i);
+        return ids;
+    }
+
+    private static List<String> ids(List<AudioSource> sources)
+    {
+        List<String> ids = new ArrayList<>(sources.size());
+        for (AudioSource source : sources)
+            ids.add(source.getSource());
+        return ids;
+    }
+}